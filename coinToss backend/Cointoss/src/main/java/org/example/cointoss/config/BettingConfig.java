@@ -0,0 +1,22 @@
+package org.example.cointoss.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "cointoss.betting")
+@Data
+public class BettingConfig {
+    // Bets waiting to be committed; placeBet is rejected straight away once this is full.
+    private int queueCapacity = 10000;
+    // Most bets committed in one transaction.
+    private int batchSize = 200;
+    // How long the writer waits for a batch to fill up before committing what it has.
+    private long maxLingerMs = 5;
+    // How long placeBet waits for its batch before giving up on a bet that is still queued.
+    private long acceptTimeoutMs = 5000;
+    // Share of placeBet responses, from 0 to 1, given a Server-Timing header with the time spent
+    // in each stage; 0 turns it off.
+    private double serverTimingSampleRate = 0;
+}
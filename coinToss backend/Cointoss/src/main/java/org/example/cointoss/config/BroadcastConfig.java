@@ -0,0 +1,23 @@
+package org.example.cointoss.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "cointoss.broadcast")
+@Data
+public class BroadcastConfig {
+    // Most often one pool's totals are sent to its subscribers, however fast bets arrive.
+    private long poolIntervalMs = 100;
+    // Bytes that may wait to be sent to one WebSocket session before it is disconnected.
+    private int sessionBufferBytes = 512 * 1024;
+    // Longest one WebSocket session may take to take a message before it is disconnected.
+    private long sessionSendTimeLimitMs = 10000;
+    // Threads that write queued messages to WebSocket sessions.
+    private int outboundThreads = 4;
+    // Most writer threads, counting those added in place of writes stuck on slow sessions.
+    private int maxOutboundThreads = 32;
+    // How often writes in progress are checked; one running longer gets a writer added in its place.
+    private long outboundCheckIntervalMs = 100;
+}
@@ -0,0 +1,15 @@
+package org.example.cointoss.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "cointoss.candles")
+@Data
+public class CandleConfig {
+    // Most often a pair's price topic is published, however fast ticks arrive.
+    private long publishIntervalMs = 500;
+    // Completed candles kept in memory per pair and interval.
+    private int history = 300;
+}
@@ -0,0 +1,21 @@
+package org.example.cointoss.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "cointoss.cluster")
+@Data
+public class ClusterConfig {
+    // Name this instance holds leases under; a random one per start when blank.
+    private String nodeId = "";
+    // How long the leader's lease lasts without renewal; the longest a dead leader holds up the game cycle.
+    private long leaderLeaseMs = 10000;
+    // How often the leader renews its lease and the other nodes try to take it over.
+    private long heartbeatIntervalMs = 2000;
+    // How long a node's claim on settling a pool lasts before another node may take the pool over.
+    private long claimLeaseMs = 60000;
+    // How often nodes that are not the leader look for pools it has opened.
+    private long followIntervalMs = 1000;
+}
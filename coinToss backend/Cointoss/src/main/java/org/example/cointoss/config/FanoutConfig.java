@@ -0,0 +1,21 @@
+package org.example.cointoss.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "cointoss.fanout")
+@Data
+public class FanoutConfig {
+    // "local" delivers updates to this node's subscribers only; "postgres" relays them to every node over NOTIFY.
+    private String mode = "local";
+    // Postgres channel the nodes NOTIFY and LISTEN on.
+    private String channel = "cointoss_fanout";
+    // How long updates are collected before they are sent as one NOTIFY.
+    private long batchIntervalMs = 50;
+    // How long the listener waits for notifications before checking its connection.
+    private int listenTimeoutMs = 500;
+    // Wait before reconnecting a listener that lost its connection.
+    private long reconnectDelayMs = 1000;
+}
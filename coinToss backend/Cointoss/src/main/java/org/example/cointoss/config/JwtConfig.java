@@ -16,6 +16,8 @@ public class JwtConfig {
     private int accessTokenExpiration;
     private int refreshTokenExpiration;
     private boolean cookieSecure = true;
+    // Verified tokens kept so repeated requests skip the signature check; 0 turns the cache off.
+    private int cacheSize = 10000;
 
     public SecretKey getSecretKey(){
         return (Keys.hmacShaKeyFor(secret.getBytes()));
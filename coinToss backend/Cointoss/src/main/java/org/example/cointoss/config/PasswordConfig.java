@@ -0,0 +1,17 @@
+package org.example.cointoss.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "cointoss.passwords")
+@Data
+public class PasswordConfig {
+    // BCrypt work factor; a stored hash of another one is rehashed at the user's next login.
+    private int bcryptStrength = 10;
+    // Threads password hashes are computed on, which caps the CPU logins can take.
+    private int hashingThreads = 2;
+    // Hashes waiting for a thread; requests beyond this are turned away.
+    private int queueCapacity = 64;
+}
@@ -0,0 +1,37 @@
+package org.example.cointoss.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+@Configuration
+@ConfigurationProperties(prefix = "cointoss.pools")
+@Data
+public class PoolConfig {
+    // Markets pools are run for, each on its own round. Their pairs are captured as well.
+    private List<Market> markets = new ArrayList<>(List.of(new Market()));
+    // How often the scheduler re-reads betting_pools for deadlines it does not know about yet.
+    private long sweepIntervalMs = 60000;
+    // How long a pool that could not open or settle (no recent price, full queue) waits to try again.
+    private long retryDelayMs = 5000;
+    // How long past its settlement time a pool may wait for a price before it is voided and its bets refunded.
+    private long settlementDeadlineMs = 600000;
+
+    public Optional<Market> market(String assetPair) {
+        return markets.stream().filter(market -> market.getAssetPair().equalsIgnoreCase(assetPair)).findFirst();
+    }
+
+    @Data
+    public static class Market {
+        // Pair the pools bet on, e.g. BTC/USDT.
+        private String assetPair = "BTC/USDT";
+        // Seconds after opening that a pool stops taking bets.
+        private long bettingSeconds = 15;
+        // Seconds after opening that a pool settles; the next pool of the pair opens then too.
+        private long roundSeconds = 30;
+    }
+}
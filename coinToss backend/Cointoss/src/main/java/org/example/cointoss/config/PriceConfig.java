@@ -0,0 +1,30 @@
+package org.example.cointoss.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "cointoss.prices")
+@Data
+public class PriceConfig {
+    // Pairs captured besides the ones markets run pools on (cointoss.pools.markets), e.g. for charts only.
+    private List<String> assetPairs = new ArrayList<>();
+    // How often a tick is captured for each pair.
+    private long captureIntervalMs = 1000;
+    // How far a tick may be from the time a pool needs a price for before it is not trusted.
+    private long maxStalenessMs = 5000;
+    // Directory holding one memory-mapped tick ring file per pair.
+    private String storeDir = "data/ticks";
+    // Ticks kept per pair before the oldest are overwritten; a day at one tick a second.
+    private int ringCapacity = 86400;
+    // How often the price feed polls the exchange for every market it serves.
+    private long feedPollIntervalMs = 1000;
+    // Oldest cached price the feed still serves; past this getBuyPrice fails instead.
+    private long feedMaxAgeMs = 10000;
+    // Timeout for one request to the exchange.
+    private long feedRequestTimeoutMs = 3000;
+}
@@ -0,0 +1,41 @@
+package org.example.cointoss.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "cointoss.rate-limits")
+@Data
+public class RateLimitConfig {
+    // Turns every limit off, e.g. for load tests.
+    private boolean enabled = true;
+    // Routes with a budget of their own, per signed-in user or else per client IP; the rest are not limited.
+    private List<Route> routes = new ArrayList<>(List.of(
+            new Route("bets", "POST", "/api/bets", 20, 10),
+            new Route("login", "POST", "/api/auth/login", 5, 0.2),
+            new Route("webhooks", "POST", "/api/webhook/**", 50, 25)));
+    // How often buckets that have refilled completely are dropped; they hold nothing a new one would not.
+    private long evictIntervalMs = 60000;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Route {
+        // Tag the route's rejections are counted under.
+        private String name;
+        // HTTP method, or blank for any.
+        private String method;
+        // Ant-style path pattern, e.g. /api/webhook/**.
+        private String path;
+        // Requests that can be made at once after a quiet spell.
+        private int burst;
+        // Requests per second the budget refills at.
+        private double perSecond;
+    }
+}
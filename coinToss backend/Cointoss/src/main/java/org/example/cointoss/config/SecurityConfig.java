@@ -3,6 +3,7 @@ package org.example.cointoss.config;
 import lombok.AllArgsConstructor;
 import org.example.cointoss.entities.Role;
 import org.example.cointoss.filters.JwtAuthenticationFilter;
+import org.example.cointoss.filters.RateLimitFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -29,6 +30,8 @@ import static org.springframework.security.config.Customizer.withDefaults;
 public class SecurityConfig {
     private final UserDetailsService userDetailsService;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    private final PasswordConfig passwordConfig;
+    private final RateLimitFilter rateLimitFilter;
 
     @Bean
     public AuthenticationManager getAuthenticationManager(AuthenticationConfiguration config) throws Exception {
@@ -36,7 +39,7 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {return new BCryptPasswordEncoder();}
+    public PasswordEncoder passwordEncoder() {return new BCryptPasswordEncoder(passwordConfig.getBcryptStrength());}
 
     @Bean
     @SuppressWarnings("deprecation")
@@ -73,6 +76,9 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.PUT, "/api/users/*/changeEmail").authenticated()
                         .requestMatchers(HttpMethod.POST, "/api/users/*/change-password").authenticated()
                         
+                        // Public price candles for charts
+                        .requestMatchers(HttpMethod.GET, "/api/prices/**").permitAll()
+                        
                         // Protected Wallet Endpoints (requires authentication)
                         .requestMatchers("/api/wallets/**").authenticated()
                         
@@ -91,11 +97,15 @@ public class SecurityConfig {
                         // Debug Endpoints (consider making these protected in production)
                         .requestMatchers(HttpMethod.GET, "/debug/health").permitAll()
                         .requestMatchers("/debug/**").authenticated()
+
+                        // Metrics for Prometheus; keep /actuator off the public ingress
+                        .requestMatchers(HttpMethod.GET, "/actuator/prometheus").permitAll()
                         
                         // All other requests require authentication
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(rateLimitFilter, JwtAuthenticationFilter.class)
                 .exceptionHandling(c ->
                 {
                     c.authenticationEntryPoint(
@@ -0,0 +1,17 @@
+package org.example.cointoss.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "cointoss.settlement")
+@Data
+public class SettlementConfig {
+    // Winning bets paid and credited per transaction; also the JDBC fetch size.
+    private int chunkSize = 1000;
+    // Pools settled at the same time.
+    private int workers = 4;
+    // Due pools waiting for a worker; pools beyond this are left for the next run.
+    private int queueCapacity = 1000;
+}
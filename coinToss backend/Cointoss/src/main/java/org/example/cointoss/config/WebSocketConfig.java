@@ -1,17 +1,26 @@
 // src/main/java/org/example/cointoss/config/WebSocketConfig.java
 package org.example.cointoss.config;
 
+import lombok.RequiredArgsConstructor;
+import org.example.cointoss.filters.StompAuthenticationInterceptor;
+import org.example.cointoss.service.SessionOutboxes;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.lang.NonNull;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker // This enables WebSocket message handling, backed by a message broker.
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final SessionOutboxes sessionOutboxes;
+    private final StompAuthenticationInterceptor stompAuthenticationInterceptor;
+
     @Override
     public void registerStompEndpoints(@NonNull StompEndpointRegistry registry) {
         // This registers a WebSocket endpoint that clients will connect to.
@@ -24,8 +33,23 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void configureMessageBroker(@NonNull MessageBrokerRegistry registry) {
         // This configures our message broker, which is like a post office for messages.
         // It defines that messages whose destination starts with "/topic" should be routed to the broker.
-        registry.enableSimpleBroker("/topic");
+        // "/queue" carries what is meant for one user only, which clients subscribe to as "/user/queue/...".
+        registry.enableSimpleBroker("/topic", "/queue");
         // It also defines that messages from clients destined for the server should be prefixed with "/app".
         registry.setApplicationDestinationPrefixes("/app");
+        registry.setUserDestinationPrefix("/user");
+    }
+
+    @Override
+    public void configureClientInboundChannel(@NonNull ChannelRegistration registration) {
+        // A CONNECT carrying a bearer token makes the session that user's.
+        registration.interceptors(stompAuthenticationInterceptor);
+    }
+
+    @Override
+    public void configureWebSocketTransport(@NonNull WebSocketTransportRegistration registration) {
+        // Every session sends through a bounded queue of its own, so slow clients are dropped
+        // instead of holding up the broker for everyone else.
+        registration.addDecoratorFactory(sessionOutboxes::decorate);
     }
-}
\ No newline at end of file
+}
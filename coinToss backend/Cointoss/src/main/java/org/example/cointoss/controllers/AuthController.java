@@ -11,12 +11,12 @@ import org.example.cointoss.dtos.LoginRequest;
 import org.example.cointoss.dtos.UserDto;
 import org.example.cointoss.mappers.UserMapper;
 import org.example.cointoss.repositories.UserRepository;
+import org.example.cointoss.exceptions.PasswordHashingBusyException;
 import org.example.cointoss.service.JwtService;
+import org.example.cointoss.service.PasswordHasher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
@@ -25,11 +25,11 @@ import org.springframework.web.bind.annotation.*;
 @AllArgsConstructor
 @Slf4j
 public class AuthController {
-    private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
     private final JwtConfig jwtConfig;
     private final UserRepository userRepository;
     private final UserMapper userMapper;
+    private final PasswordHasher passwordHasher;
 
     /**
      * POST /auth/login
@@ -51,25 +51,30 @@ public class AuthController {
             HttpServletResponse response) {
         
         log.info("Login attempt for email: {}", request.getEmail());
-        
-        try {
-            authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(
-                            request.getEmail(),
-                            request.getPassword()
-                    )
-            );
-            log.info("Authentication successful for email: {}", request.getEmail());
-            
-        } catch (BadCredentialsException e) {
+
+        // The one lookup of the user; the password is checked against it and the tokens issued from it.
+        var user = userRepository.findByEmail(request.getEmail()).orElse(null);
+        if (user == null) {
+            passwordHasher.matchNobody(request.getPassword());
             log.error("Authentication failed for email: {} - Bad credentials", request.getEmail());
-            throw e;
-        } catch (Exception e) {
-            log.error("Authentication failed for email: {} - Error: {}", request.getEmail(), e.getMessage());
-            throw e;
+            throw new BadCredentialsException("Bad credentials");
         }
-        
-        var user = userRepository.findByEmail(request.getEmail()).orElseThrow();
+        if (!passwordHasher.matches(request.getPassword(), user.getPassword())) {
+            log.error("Authentication failed for email: {} - Bad credentials", request.getEmail());
+            throw new BadCredentialsException("Bad credentials");
+        }
+        log.info("Authentication successful for email: {}", request.getEmail());
+
+        if (passwordHasher.needsRehash(user.getPassword())) {
+            // The work factor changed since the hash was made, and the password is at hand now.
+            try {
+                user.setPassword(passwordHasher.encode(request.getPassword()));
+                userRepository.save(user);
+            } catch (PasswordHashingBusyException e) {
+                log.info("Rehash of the password of {} put off to a later login", request.getEmail());
+            }
+        }
+
         var accessToken = jwtService.generateAccessToken(user);
         var refreshToken = jwtService.generateRefreshToken(user);
 
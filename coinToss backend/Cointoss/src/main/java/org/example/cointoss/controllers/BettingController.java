@@ -3,13 +3,22 @@ package org.example.cointoss.controllers;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.example.cointoss.config.BettingConfig;
+import org.example.cointoss.config.PoolConfig;
 import org.example.cointoss.dtos.PlaceBetRequest;
 import org.example.cointoss.entities.BettingPools;
+import org.example.cointoss.exceptions.BetQueueFullException;
 import org.example.cointoss.repositories.BettingPoolsRepository;
+import org.example.cointoss.scheduler.GameCycleScheduler;
+import org.example.cointoss.service.BetTimings;
 import org.example.cointoss.service.BettingService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
 @RestController
 @RequestMapping("/api/bets")
 @RequiredArgsConstructor
@@ -17,34 +26,72 @@ public class BettingController {
 
     private final BettingService bettingService;
     private final BettingPoolsRepository bettingPoolsRepository;
+    private final PoolConfig poolConfig;
+    private final GameCycleScheduler gameCycleScheduler;
+    private final BettingConfig bettingConfig;
 
     @PostMapping
     public ResponseEntity<Void> placeBet(@Valid @RequestBody PlaceBetRequest request) {
+        // Only sampled requests collect their stage timings for a Server-Timing header.
+        double sampleRate = bettingConfig.getServerTimingSampleRate();
+        BetTimings timings = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate ? new BetTimings() : null;
         try {
-            bettingService.placeBet(request.getPoolId(), request.getAmount(), request.getDirection());
-            return ResponseEntity.ok().build();
+            bettingService.placeBet(request.getPoolId(), request.getAmount(), request.getDirection(), timings);
+            return withServerTiming(ResponseEntity.ok(), timings).build();
+        } catch (BetQueueFullException e) {
+            // The bet was never queued, so the client can safely retry it.
+            return withServerTiming(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE), timings)
+                    .header("Retry-After", "1")
+                    .header("X-Error-Message", e.getMessage())
+                    .build();
         } catch (IllegalStateException | IllegalArgumentException e) {
             // Catches business logic errors (e.g., "insufficient funds") and returns a bad request status.
-            return ResponseEntity.badRequest().header("X-Error-Message", e.getMessage()).build();
+            return withServerTiming(ResponseEntity.badRequest(), timings).header("X-Error-Message", e.getMessage()).build();
         }
     }
 
+    private static ResponseEntity.BodyBuilder withServerTiming(ResponseEntity.BodyBuilder response, BetTimings timings) {
+        return timings == null ? response : response.header("Server-Timing", timings.serverTiming());
+    }
+
 
+    /**
+     * The open pool of a market, e.g. ?assetPair=BTC/USDT. Without one, the first configured market's.
+     */
     @GetMapping("/current-pool")
-    public ResponseEntity<BettingPools> getCurrentPool() {
-        return bettingPoolsRepository.findFirstByStatusOrderByOpenTimeDesc("OPEN")
+    public ResponseEntity<BettingPools> getCurrentPool(@RequestParam(required = false) String assetPair) {
+        Optional<PoolConfig.Market> market = resolveMarket(assetPair);
+        if (market.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return bettingPoolsRepository.findFirstByAssetPairAndStatusOrderByOpenTimeDesc(market.get().getAssetPair(), "OPEN")
             .map(ResponseEntity::ok) // If a pool is found, return it with 200 OK
             .orElse(ResponseEntity.notFound().build()); // If not found, return 404 Not Found
     }
 
     // Temporary endpoint to create a pool for testing
     @PostMapping("/create-test-pool")
-    public ResponseEntity<String> createTestPool() {
+    public ResponseEntity<String> createTestPool(@RequestParam(required = false) String assetPair) {
         try {
-            bettingService.createNextPool();
+            Optional<PoolConfig.Market> market = resolveMarket(assetPair);
+            if (market.isEmpty()) {
+                return ResponseEntity.badRequest().body("Error creating pool: unknown market " + assetPair);
+            }
+            Optional<BettingPools> pool = bettingService.createNextPool(market.get());
+            if (pool.isEmpty()) {
+                return ResponseEntity.badRequest().body("Error creating pool: no recent price for " + market.get().getAssetPair());
+            }
+            gameCycleScheduler.track(pool.get());
             return ResponseEntity.ok("Test pool created successfully!");
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Error creating pool: " + e.getMessage());
         }
     }
+
+    private Optional<PoolConfig.Market> resolveMarket(String assetPair) {
+        if (assetPair == null) {
+            return poolConfig.getMarkets().stream().findFirst();
+        }
+        return poolConfig.market(assetPair);
+    }
 }
\ No newline at end of file
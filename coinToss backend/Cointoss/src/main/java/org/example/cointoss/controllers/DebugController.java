@@ -29,11 +29,11 @@ public class DebugController {
 
     @PostMapping("/trigger-creation")
     public void triggerCreation() {
-        scheduler.schedulePoolCreation();
+        scheduler.openAllNow();
     }
 
     @PostMapping("/trigger-updates")
     public void triggerUpdates() {
-        scheduler.schedulePoolUpdates();
+        scheduler.rebuild();
     }
 }
\ No newline at end of file
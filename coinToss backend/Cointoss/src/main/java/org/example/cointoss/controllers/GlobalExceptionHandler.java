@@ -1,5 +1,6 @@
 package org.example.cointoss.controllers;
 
+import org.example.cointoss.exceptions.PasswordHashingBusyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -20,4 +21,13 @@ public class GlobalExceptionHandler {
         });
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errors);
     }
+
+    // Sign-in, registration and password changes all hash on the bounded password threads.
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<Void> handlePasswordHashingBusy(final PasswordHashingBusyException exception) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .header("X-Error-Message", exception.getMessage())
+                .build();
+    }
 }
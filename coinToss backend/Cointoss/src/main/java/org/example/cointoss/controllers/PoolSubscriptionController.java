@@ -0,0 +1,26 @@
+package org.example.cointoss.controllers;
+
+import lombok.RequiredArgsConstructor;
+import org.example.cointoss.dtos.PoolUpdateDto;
+import org.example.cointoss.service.PoolUpdateBroadcaster;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.stereotype.Controller;
+
+/**
+ * Answers STOMP subscriptions to /app/pool/{id} with the pool's current snapshot, sent to the
+ * subscribing session only. Clients subscribe to /topic/pool/{id} for the updates and to this for
+ * where to start from, instead of polling /api/bets/current-pool on every reconnect.
+ */
+@Controller
+@RequiredArgsConstructor
+public class PoolSubscriptionController {
+
+    private final PoolUpdateBroadcaster poolUpdateBroadcaster;
+
+    // Nothing is sent back for a pool that is already settled.
+    @SubscribeMapping("/pool/{poolId}")
+    public PoolUpdateDto poolSnapshot(@DestinationVariable Long poolId) {
+        return poolUpdateBroadcaster.snapshot(poolId).orElse(null);
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.cointoss.controllers;
+
+import lombok.RequiredArgsConstructor;
+import org.example.cointoss.dtos.CandleDto;
+import org.example.cointoss.service.CandleAggregator;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/prices")
+@RequiredArgsConstructor
+public class PriceController {
+    private static final int MAX_CANDLES = 1000;
+
+    private final CandleAggregator candleAggregator;
+
+    /**
+     * Recent candles of a pair from memory, oldest first, for charts to load before they follow
+     * /topic/price/{pair}. The pair is written with a dash, e.g. BTC-USDT.
+     */
+    @GetMapping("/{pair}/candles")
+    public ResponseEntity<List<CandleDto>> getCandles(
+            @PathVariable String pair,
+            @RequestParam(defaultValue = "1m") String interval,
+            @RequestParam(defaultValue = "100") int limit) {
+        return CandleAggregator.Interval.fromLabel(interval)
+                .map(candleInterval -> ResponseEntity.ok(candleAggregator.snapshot(
+                        CandleAggregator.assetPair(pair), candleInterval, Math.max(0, Math.min(limit, MAX_CANDLES)))))
+                .orElse(ResponseEntity.badRequest().header("X-Error-Message", "Interval must be 1s, 1m or 5m.").build());
+    }
+}
@@ -7,9 +7,9 @@ import org.example.cointoss.entities.Role;
 import org.example.cointoss.entities.Wallet;
 import org.example.cointoss.mappers.UserMapper;
 import org.example.cointoss.repositories.UserRepository;
+import org.example.cointoss.service.PasswordHasher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -21,7 +21,7 @@ import java.util.Map;
 public class UserController {
     private final UserRepository userRepository;
     private final UserMapper userMapper;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
 
     /**
      * POST /users
@@ -47,7 +47,7 @@ public class UserController {
             );
         }
         var user = userMapper.toEntity(request);
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
+        user.setPassword(passwordHasher.encode(user.getPassword()));
         user.setRole(Role.USER);
 
         // 1. Create a new Wallet instance. It starts with the default 100 NGN balance.
@@ -141,11 +141,11 @@ public class UserController {
             return ResponseEntity.notFound().build();
         }
 
-        if (!passwordEncoder.matches(request.getOldPassword(), user.getPassword())) {
+        if (!passwordHasher.matches(request.getOldPassword(), user.getPassword())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
-        user.setPassword(passwordEncoder.encode(request.getNewPassword()));
+        user.setPassword(passwordHasher.encode(request.getNewPassword()));
         userRepository.save(user);
         return ResponseEntity.noContent().build();
     }
@@ -1,8 +1,9 @@
 package org.example.cointoss.controllers;
 
 import com.google.gson.Gson;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.http.HttpServletRequest;
-import lombok.RequiredArgsConstructor;
 import org.example.cointoss.dtos.KorapayWebhookEvent;
 import org.example.cointoss.service.PaymentGateway;
 import org.example.cointoss.utilities.HmacUtil;
@@ -11,21 +12,41 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.BufferedReader;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/webhook")
-@RequiredArgsConstructor
 public class WebhookController {
     private final PaymentGateway paymentGateway;
+    private final Timer processed;
+    private final Timer invalidSignature;
+    private final Timer failed;
 
     @Value("${kora.secretKey}")
     private String korapaySecret;
 
+    public WebhookController(PaymentGateway paymentGateway, MeterRegistry meterRegistry) {
+        this.paymentGateway = paymentGateway;
+        this.processed = webhooks(meterRegistry, "processed");
+        this.invalidSignature = webhooks(meterRegistry, "invalid_signature");
+        this.failed = webhooks(meterRegistry, "failed");
+    }
+
+    private static Timer webhooks(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("cointoss.webhooks")
+                .description("Time to receive, verify and apply a payment webhook")
+                .publishPercentileHistogram()
+                .tag("provider", "korapay")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
     @PostMapping("/korapay")
     public ResponseEntity<String> receiveKorapayWebhook(HttpServletRequest request,
                                                         @RequestHeader("x-korapay-signature") String signature
     ) {
+        long startNanos = System.nanoTime();
         try {
             // Get raw request body
             String payload;
@@ -35,6 +56,7 @@ public class WebhookController {
 
             // Verify HMAC signature
             if (!HmacUtil.isValidSignature(payload, signature, korapaySecret)) {
+                invalidSignature.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
                 return ResponseEntity.status(401).body("Invalid signature");
             }
 
@@ -43,10 +65,12 @@ public class WebhookController {
 
             // Process event
             paymentGateway.handleWebhook(webhookEvent);
+            processed.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
 
             return ResponseEntity.ok("Webhook processed successfully");
 
         } catch (Exception ex) {
+            failed.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
             return ResponseEntity.internalServerError().body("Error processing webhook");
         }
     }
@@ -0,0 +1,17 @@
+package org.example.cointoss.dtos;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * A user's results in a settled pool, pushed to /user/queue/results: every bet they placed in it
+ * and their wallet balance once it had paid out.
+ */
+public record BetResultsDto(
+        Long poolId,
+        List<BetResult> bets,
+        BigDecimal totalPayout,
+        BigDecimal balance
+) {
+    public record BetResult(Long betId, BigDecimal amount, String direction, String status, BigDecimal payout) {}
+}
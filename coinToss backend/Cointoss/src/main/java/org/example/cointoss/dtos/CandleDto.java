@@ -0,0 +1,13 @@
+package org.example.cointoss.dtos;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+public record CandleDto(
+        OffsetDateTime openTime,
+        BigDecimal open,
+        BigDecimal high,
+        BigDecimal low,
+        BigDecimal close,
+        long ticks
+) {}
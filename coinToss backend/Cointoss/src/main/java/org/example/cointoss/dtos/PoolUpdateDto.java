@@ -2,8 +2,23 @@ package org.example.cointoss.dtos;
 
 import java.math.BigDecimal;
 
+/**
+ * A pool's latest totals and what was added to them since the update before. The sequence grows
+ * by one with every update of the pool a node sends.
+ *
+ * Delivery of the deltas is not guaranteed. An update still queued for a client that has fallen
+ * behind is dropped when a newer one for the same pool is queued, and its addedUp/addedDown go
+ * with it. The totals of every update are always current, so a client that only shows them needs
+ * nothing more. A client that keeps its own running sums of the deltas must check that each
+ * sequence is one more than the last; on a gap it resubscribes to /app/pool/{id} and starts again
+ * from the snapshot. A snapshot has nothing added and the sequence of the last update sent; the
+ * next update on /topic/pool/{id} follows it.
+ */
 public record PoolUpdateDto(
         Long poolId,
         BigDecimal totalUpPool,
-        BigDecimal totalDownPool
-) {}
\ No newline at end of file
+        BigDecimal totalDownPool,
+        BigDecimal addedUp,
+        BigDecimal addedDown,
+        long sequence
+) {}
@@ -0,0 +1,15 @@
+package org.example.cointoss.dtos;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+/**
+ * Latest price of a pair with its candle in progress for each interval, keyed "1s", "1m" and "5m".
+ */
+public record PriceUpdateDto(
+        String assetPair,
+        BigDecimal price,
+        OffsetDateTime time,
+        Map<String, CandleDto> candles
+) {}
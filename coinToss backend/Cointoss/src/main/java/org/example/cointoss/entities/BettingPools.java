@@ -28,10 +28,10 @@ public class BettingPools {
     @Column(name = "end_price", precision = 10, scale = 2)
     private BigDecimal endPrice;
 
-    @Column(name = "total_up_pool", nullable = false, precision = 10, scale = 2)
+    @Column(name = "total_up_pool", nullable = false, precision = 14, scale = 2)
     private BigDecimal totalUpPool = BigDecimal.ZERO;
 
-    @Column(name = "total_down_pool", nullable = false, precision = 10, scale = 2)
+    @Column(name = "total_down_pool", nullable = false, precision = 14, scale = 2)
     private BigDecimal totalDownPool = BigDecimal.ZERO;
 
     @Column(name = "open_time", nullable = false, updatable = false)
@@ -0,0 +1,26 @@
+package org.example.cointoss.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A named lease one node holds until it expires or is released: "game-cycle" for the leader, and
+ * "pool:{id}" for the node settling a pool. Expiry is in epoch millis of the holder's clock, so
+ * nodes need synchronized clocks and leases far longer than any skew between them.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "cluster_leases")
+public class ClusterLease {
+    @Id
+    @Column(length = 100)
+    private String name;
+
+    @Column(nullable = false, length = 100)
+    private String owner;
+
+    @Column(name = "expires_at", nullable = false)
+    private long expiresAt;
+}
@@ -0,0 +1,69 @@
+package org.example.cointoss.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * Progress of a pool that is being settled in chunks. Written once when settlement starts, with
+ * everything needed to pay any single bet, then advanced in the same transaction as each chunk.
+ * Deleted when the pool is marked SETTLED.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "settlement_checkpoints")
+public class SettlementCheckpoint {
+    @Id
+    @Column(name = "pool_id")
+    private Long poolId;
+
+    @Column(name = "winning_direction", nullable = false, length = 4)
+    private String winningDirection;
+
+    @Column(name = "end_price", nullable = false, precision = 10, scale = 2)
+    private BigDecimal endPrice;
+
+    @Column(name = "total_up_pool", nullable = false, precision = 14, scale = 2)
+    private BigDecimal totalUpPool;
+
+    @Column(name = "total_down_pool", nullable = false, precision = 14, scale = 2)
+    private BigDecimal totalDownPool;
+
+    @Column(name = "bet_count", nullable = false)
+    private long betCount;
+
+    // The winnings pool in kobo.
+    @Column(nullable = false)
+    private long pot;
+
+    // The winning side's total stake in kobo.
+    @Column(name = "winning_total", nullable = false)
+    private long winningTotal;
+
+    // Kobo left over after every winner got their share rounded down.
+    @Column(nullable = false)
+    private long leftover;
+
+    // The last winner, by remainder then id, that gets one of the leftover kobo.
+    @Column(name = "threshold_remainder")
+    private Long thresholdRemainder;
+
+    @Column(name = "threshold_bet_id")
+    private Long thresholdBetId;
+
+    @Column(name = "last_bet_id", nullable = false)
+    private long lastBetId;
+
+    @Column(name = "settled_bets", nullable = false)
+    private long settledBets;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt = OffsetDateTime.now();
+}
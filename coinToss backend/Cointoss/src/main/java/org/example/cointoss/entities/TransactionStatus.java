@@ -1,5 +1,7 @@
 package org.example.cointoss.entities;
 
 public enum TransactionStatus {
-    PENDING, EXPIRED, FAILED, SUCCESS
+    PENDING, EXPIRED, FAILED, SUCCESS,
+    // Paid out by the gateway, but the wallet could not be charged the fee; needs a person to look at it
+    NEEDS_REVIEW
 }
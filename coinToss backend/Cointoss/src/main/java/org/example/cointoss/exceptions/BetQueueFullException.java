@@ -0,0 +1,7 @@
+package org.example.cointoss.exceptions;
+
+public class BetQueueFullException extends RuntimeException {
+    public BetQueueFullException() {
+        super("Too many bets are being placed right now. Please retry.");
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.cointoss.exceptions;
+
+import lombok.Getter;
+
+/**
+ * A bet turned down for a business reason. Still an IllegalStateException, so callers answer it
+ * as before; the reason is only there to count rejections by.
+ */
+@Getter
+public class BetRejectedException extends IllegalStateException {
+    private final String reason;
+
+    public BetRejectedException(String reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public BetRejectedException(String reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+}
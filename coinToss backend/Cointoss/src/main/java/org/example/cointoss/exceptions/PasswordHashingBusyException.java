@@ -0,0 +1,7 @@
+package org.example.cointoss.exceptions;
+
+public class PasswordHashingBusyException extends RuntimeException {
+    public PasswordHashingBusyException() {
+        super("Too many sign-ins are being processed right now. Please retry.");
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.cointoss.exceptions;
+
+public class PriceUnavailableException extends RuntimeException {
+    public PriceUnavailableException(String marketPair) {
+        super("No recent price available for " + marketPair + ".");
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.cointoss.filters;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.cointoss.config.RateLimitConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how often one client can call each route in {@link RateLimitConfig}, so a single abusive
+ * client cannot take the connection pool from everyone else. Runs right after
+ * {@link JwtAuthenticationFilter} and keys its budgets by the signed-in user's id, or by the
+ * client IP for anonymous calls such as login and webhooks.
+ *
+ * Each budget is a token bucket held in one AtomicLong, GCRA style: the time at which the bucket
+ * will be full again. A request moves that time on by one refill interval with a single CAS, and
+ * is answered 429 with a Retry-After instead if that would put it more than a burst ahead of now.
+ * A bucket whose time has passed is full, so dropping it loses nothing; a sweep drops those to
+ * keep memory to the clients that were busy lately.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+    private final RateLimitConfig config;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    // Registered once per route, so turning a request away allocates nothing.
+    private final Map<String, Counter> rejected = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RateLimitFilter(RateLimitConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, System::nanoTime);
+    }
+
+    RateLimitFilter(RateLimitConfig config, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+        Gauge.builder("cointoss.ratelimit.buckets", buckets, Map::size)
+                .description("Rate limit buckets of clients seen lately")
+                .register(meterRegistry);
+        for (RateLimitConfig.Route route : config.getRoutes()) {
+            rejected.computeIfAbsent(route.getName(), this::rejectedCounter);
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain filterChain) throws ServletException, IOException {
+        RateLimitConfig.Route route = config.isEnabled() ? route(request) : null;
+        if (route == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        AtomicLong bucket = buckets.computeIfAbsent(route.getName() + "|" + client(request), key -> new AtomicLong(Long.MIN_VALUE));
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / route.getPerSecond());
+        long waitNanos = acquire(bucket, nanoClock.getAsLong(), intervalNanos, intervalNanos * route.getBurst());
+        if (waitNanos > 0) {
+            rejected.computeIfAbsent(route.getName(), this::rejectedCounter).increment();
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", String.valueOf(Math.max(1, (waitNanos + 999_999_999) / 1_000_000_000)));
+            response.setHeader("X-Error-Message", "Too many requests. Please retry later.");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private Counter rejectedCounter(String route) {
+        return Counter.builder("cointoss.ratelimit.rejected")
+                .description("Requests turned away for going over their route's budget")
+                .tag("route", route)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Drops the buckets that have refilled completely.
+     */
+    @Scheduled(fixedDelayString = "${cointoss.rate-limits.evict-interval-ms:60000}")
+    public void evictFullBuckets() {
+        long now = nanoClock.getAsLong();
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+
+    /**
+     * Takes a token from the bucket. Returns 0 if there was one, or else how long until there is.
+     */
+    static long acquire(AtomicLong bucket, long now, long intervalNanos, long burstNanos) {
+        while (true) {
+            long fullAt = bucket.get();
+            // The first request of a new or full bucket counts from now.
+            long next = (fullAt == Long.MIN_VALUE || fullAt - now < 0 ? now : fullAt) + intervalNanos;
+            long ahead = next - now;
+            if (ahead > burstNanos) {
+                return ahead - burstNanos;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private RateLimitConfig.Route route(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (RateLimitConfig.Route route : config.getRoutes()) {
+            boolean methodMatches = route.getMethod() == null || route.getMethod().isBlank()
+                    || route.getMethod().equalsIgnoreCase(request.getMethod());
+            if (methodMatches && pathMatcher.match(route.getPath(), path)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    private static String client(HttpServletRequest request) {
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof Long userId) {
+            return "user:" + userId;
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+}
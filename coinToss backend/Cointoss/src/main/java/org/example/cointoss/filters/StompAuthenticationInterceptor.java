@@ -0,0 +1,52 @@
+package org.example.cointoss.filters;
+
+import lombok.AllArgsConstructor;
+import org.example.cointoss.service.JwtService;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Authenticates a STOMP CONNECT with the same bearer token as the REST API, sent as its
+ * Authorization header. The session keeps the user from then on, so later frames are not checked
+ * again and /user/queue/... destinations reach it. A CONNECT without a token stays anonymous and
+ * only gets the public topics; one with a bad token is refused.
+ */
+@Component
+@AllArgsConstructor
+public class StompAuthenticationInterceptor implements ChannelInterceptor {
+    private final JwtService jwtService;
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || (accessor.getCommand() != StompCommand.CONNECT && accessor.getCommand() != StompCommand.STOMP)) {
+            return message;
+        }
+        var authHeader = accessor.getFirstNativeHeader("Authorization");
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return message;
+        }
+        var jwt = jwtService.parseToken(authHeader.replace("Bearer ", ""));
+        if (jwt == null || jwt.isExpired()) {
+            throw new MessageDeliveryException(message, "Invalid or expired token");
+        }
+
+        accessor.setUser(new UsernamePasswordAuthenticationToken(
+                jwt.getUserId(),
+                null,
+                List.of(new SimpleGrantedAuthority("ROLE_" + jwt.getRole()))
+        ));
+        return message;
+    }
+}
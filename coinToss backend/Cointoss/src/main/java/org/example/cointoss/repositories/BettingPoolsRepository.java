@@ -3,16 +3,55 @@ package org.example.cointoss.repositories;
 
 import org.example.cointoss.entities.BettingPools;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface BettingPoolsRepository extends JpaRepository<BettingPools, Long> {
-    // This custom query will help us find the latest pool that is currently open for betting.
-    Optional<BettingPools> findFirstByStatusOrderByOpenTimeDesc(String status);
+    // Latest pool of a market that is currently open for betting.
+    Optional<BettingPools> findFirstByAssetPairAndStatusOrderByOpenTimeDesc(String assetPair, String status);
+
+    // Latest pool of a market in any status, which decides when its next pool opens.
+    Optional<BettingPools> findFirstByAssetPairOrderByOpenTimeDesc(String assetPair);
 
     List<BettingPools> findAllByStatusAndLockTimeBefore(String status, OffsetDateTime time);
     List<BettingPools> findAllByStatusAndSettlementTimeBefore(String status, OffsetDateTime time);
+    List<BettingPools> findAllByStatusIn(Collection<String> statuses);
+    List<BettingPools> findAllByIdGreaterThanOrderByIdAsc(Long id);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE BettingPools p SET p.status = :status WHERE p.id = :poolId")
+    int updateStatus(Long poolId, String status);
+
+    // Moves a pool on only from the status it is expected to be in, so a transition happens once.
+    @Transactional
+    @Modifying
+    @Query("UPDATE BettingPools p SET p.status = :status WHERE p.id = :poolId AND p.status = :expected")
+    int transitionStatus(Long poolId, String expected, String status);
+
+    // Applies the bets the PoolLedger has accumulated since its last flush. Deltas rather than
+    // absolute values, so several writers never overwrite each other's totals. Only while the pool
+    // is OPEN: once it locks its totals are rebuilt from the bets, and a late delta would count twice.
+    @Transactional
+    @Modifying
+    @Query("UPDATE BettingPools p SET p.totalUpPool = p.totalUpPool + :up, p.totalDownPool = p.totalDownPool + :down WHERE p.id = :poolId AND p.status = 'OPEN'")
+    int addToTotals(Long poolId, BigDecimal up, BigDecimal down);
 
-}
\ No newline at end of file
+    // Recomputes the totals from the bets themselves, which are the source of truth.
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+            UPDATE betting_pools SET
+                total_up_pool = (SELECT COALESCE(SUM(b.amount), 0) FROM bets b WHERE b.pool_id = :poolId AND b.direction = 'UP'),
+                total_down_pool = (SELECT COALESCE(SUM(b.amount), 0) FROM bets b WHERE b.pool_id = :poolId AND b.direction = 'DOWN')
+            WHERE id = :poolId
+            """, nativeQuery = true)
+    int reconcileTotals(Long poolId);
+}
@@ -4,8 +4,11 @@ package org.example.cointoss.repositories;
 import org.example.cointoss.entities.Wallet;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.Optional;
 
 public interface WalletRepository extends JpaRepository<Wallet, Long> {
@@ -19,4 +22,16 @@ public interface WalletRepository extends JpaRepository<Wallet, Long> {
     @Query("SELECT w FROM Wallet w WHERE w.id = :walletId")
     Optional<Wallet> fetchByIdWithBankAccounts(Long walletId);
 
+    // Atomically takes money out of a wallet. The balance check and the subtraction happen in the
+    // same statement, so concurrent debits can never overdraw it. Returns 0 if the balance was too low.
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE wallets SET balance = balance - :amount WHERE user_id = :userId AND balance >= :amount", nativeQuery = true)
+    int debit(Long userId, BigDecimal amount);
+
+    // Atomically adds money to a wallet. Returns 0 if the user has no wallet.
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE wallets SET balance = balance + :amount WHERE user_id = :userId", nativeQuery = true)
+    int credit(Long userId, BigDecimal amount);
 }
\ No newline at end of file
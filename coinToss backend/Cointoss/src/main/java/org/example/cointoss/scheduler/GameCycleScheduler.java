@@ -1,34 +1,314 @@
 package org.example.cointoss.scheduler;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.ClusterConfig;
+import org.example.cointoss.config.PoolConfig;
+import org.example.cointoss.entities.BettingPools;
+import org.example.cointoss.repositories.BettingPoolsRepository;
 import org.example.cointoss.service.BettingService;
+import org.example.cointoss.service.ClusterLeases;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Opens, locks and settles pools at their exact deadlines.
+ *
+ * Every upcoming event (a market's next open time, a pool's lock time and settlement time) waits in
+ * a {@link DelayQueue} that one dispatcher thread takes from as each comes due, so nothing is
+ * late by a polling interval and the leader does not query the database while nothing is due. The
+ * queue is rebuilt from betting_pools on startup, and that rebuild repeats on a slow sweep to pick
+ * up pools created elsewhere. Publishes how late each event fired as cointoss.scheduler.lag.
+ *
+ * In a cluster only the {@link LeaderElection} leader opens pools. The other nodes pick up the
+ * pools it opens on a short follow query and queue their deadlines too. Every node then races to
+ * claim each due pool's "pool:{id}" lease and only the winner settles it, which spreads settlement
+ * across the nodes. A node that dies mid-settlement leaves its claim to expire, and another node
+ * resumes the pool from its checkpoint.
+ *
+ * Every node captures its own price ticks into its own PriceTickStore files, so capture and
+ * settlement must run on the same node: a node only races for a pool's claim once it holds a tick
+ * near the settlement time, or the pool's checkpoint. One that was down at that moment leaves the
+ * pool to the others, and if every node that captured the pair was down then, no node can settle it.
+ * Such a pool is voided and its bets refunded once cointoss.pools.settlement-deadline-ms has passed.
+ */
 @Component
-@RequiredArgsConstructor
+@Slf4j
 public class GameCycleScheduler {
-
     private final BettingService bettingService;
+    private final BettingPoolsRepository bettingPoolsRepository;
+    private final PoolConfig poolConfig;
+    private final ClusterConfig clusterConfig;
+    private final LeaderElection leaderElection;
+    private final ClusterLeases clusterLeases;
+    // How late each kind of event fired, registered up front since there are only three.
+    private final Map<String, Timer> lagTimers = new HashMap<>();
+
+    private final DelayQueue<Deadline> deadlines = new DelayQueue<>();
+    // The deadline each event key is waiting on, kept until its action has finished.
+    private final Map<String, Deadline> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    // Highest pool id whose deadlines are queued on this node.
+    private final AtomicLong lastSeenPoolId = new AtomicLong();
+    private volatile Thread dispatcher;
+
+    public GameCycleScheduler(BettingService bettingService,
+                              BettingPoolsRepository bettingPoolsRepository,
+                              PoolConfig poolConfig,
+                              ClusterConfig clusterConfig,
+                              LeaderElection leaderElection,
+                              ClusterLeases clusterLeases,
+                              MeterRegistry meterRegistry) {
+        this.bettingService = bettingService;
+        this.bettingPoolsRepository = bettingPoolsRepository;
+        this.poolConfig = poolConfig;
+        this.clusterConfig = clusterConfig;
+        this.leaderElection = leaderElection;
+        this.clusterLeases = clusterLeases;
+        for (String event : List.of("open", "lock", "settle")) {
+            lagTimers.put(event, Timer.builder("cointoss.scheduler.lag")
+                    .description("How late a pool event fired after its deadline")
+                    .tag("event", event)
+                    .register(meterRegistry));
+        }
+        // A new leader queues every market's next open time, which the old one may have been holding.
+        leaderElection.onGranted(this::rebuild);
+        Gauge.builder("cointoss.scheduler.pending", deadlines, DelayQueue::size)
+                .description("Pool events waiting for their deadline")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        rebuild();
+        Thread thread = new Thread(this::dispatch, "pool-deadlines");
+        thread.setDaemon(true);
+        dispatcher = thread;
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        Thread thread = dispatcher;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Queues the deadlines of every pool that is not finished and, on the leader, of every market's
+     * next pool. Deadlines already queued are left alone, so this is safe to repeat.
+     */
+    @Scheduled(fixedDelayString = "${cointoss.pools.sweep-interval-ms:60000}",
+            initialDelayString = "${cointoss.pools.sweep-interval-ms:60000}")
+    public void rebuild() {
+        OffsetDateTime now = OffsetDateTime.now();
+        for (BettingPools pool : bettingPoolsRepository.findAllByStatusIn(List.of("OPEN", "LOCKED", "RETRY"))) {
+            follow(pool);
+        }
+        if (!leaderElection.isLeader()) {
+            return;
+        }
+        for (PoolConfig.Market market : poolConfig.getMarkets()) {
+            OffsetDateTime nextOpenTime = bettingPoolsRepository.findFirstByAssetPairOrderByOpenTimeDesc(market.getAssetPair())
+                    .map(pool -> pool.getOpenTime().plusSeconds(market.getRoundSeconds()))
+                    .orElse(now);
+            scheduleIfAbsent("open:" + market.getAssetPair(), nextOpenTime, "open", open(market));
+        }
+    }
+
+    /**
+     * Queues the deadlines of the pools the leader opened since the last look. The leader itself
+     * already has them.
+     */
+    @Scheduled(fixedDelayString = "${cointoss.cluster.follow-interval-ms:1000}")
+    public void followNewPools() {
+        if (leaderElection.isLeader()) {
+            return;
+        }
+        for (BettingPools pool : bettingPoolsRepository.findAllByIdGreaterThanOrderByIdAsc(lastSeenPoolId.get())) {
+            follow(pool);
+        }
+    }
 
     /**
-     * This scheduled job creates a new betting pool every 30 seconds for testing.
-     * In production, this should be every 10 minutes
+     * Brings every market's next pool forward to now.
      */
-    @Scheduled(fixedRate = 30000) // Every 30 seconds for testing
-    public void schedulePoolCreation() {
-        System.out.println("SCHEDULER: Running job to create a new betting pool...");
-        bettingService.createNextPool();
+    public void openAllNow() {
+        for (PoolConfig.Market market : poolConfig.getMarkets()) {
+            schedule("open:" + market.getAssetPair(), OffsetDateTime.now(), "open", open(market));
+        }
     }
 
     /**
-     * This scheduled job runs every 30 seconds to check the status of pools.
-     * It looks for pools that need to be locked or settled and processes them.
+     * Queues the lock of an open pool; its settlement is queued once it locks.
      */
-    @Scheduled(fixedRate = 30000)
-    public void schedulePoolUpdates() {
-        System.out.println("SCHEDULER: Running job to check for pools to lock or settle...");
-        bettingService.lockDuePools();
-        bettingService.settleDuePools();
+    public void track(BettingPools pool) {
+        lastSeenPoolId.accumulateAndGet(pool.getId(), Math::max);
+        scheduleIfAbsent("lock:" + pool.getId(), orNow(pool.getLockTime()), "lock", lock(pool));
+    }
+
+    private void follow(BettingPools pool) {
+        switch (pool.getStatus()) {
+            case "OPEN" -> track(pool);
+            case "LOCKED", "RETRY" -> {
+                lastSeenPoolId.accumulateAndGet(pool.getId(), Math::max);
+                scheduleIfAbsent("settle:" + pool.getId(), orNow(pool.getSettlementTime()), "settle", settle(pool.getId()));
+            }
+            default -> lastSeenPoolId.accumulateAndGet(pool.getId(), Math::max);
+        }
+    }
+
+    private Supplier<CompletableFuture<?>> open(PoolConfig.Market market) {
+        return () -> {
+            if (!leaderElection.isLeader()) {
+                // Dropped; whichever node is the leader has its own open deadline for the market.
+                return CompletableFuture.completedFuture(null);
+            }
+            String key = "open:" + market.getAssetPair();
+            Optional<BettingPools> pool = bettingService.createNextPool(market);
+            if (pool.isPresent()) {
+                track(pool.get());
+                schedule(key, pool.get().getOpenTime().plusSeconds(market.getRoundSeconds()), "open", open(market));
+            } else {
+                schedule(key, retryTime(), "open", open(market));
+            }
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    private Supplier<CompletableFuture<?>> lock(BettingPools pool) {
+        return () -> {
+            bettingService.lockPool(pool.getId());
+            scheduleIfAbsent("settle:" + pool.getId(), orNow(pool.getSettlementTime()), "settle", settle(pool.getId()));
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    private Supplier<CompletableFuture<?>> settle(Long poolId) {
+        return () -> {
+            // Reloaded, since the pool may have been settled elsewhere since it was queued.
+            Optional<BettingPools> pool = bettingPoolsRepository.findById(poolId);
+            if (pool.isEmpty() || "SETTLED".equals(pool.get().getStatus()) || "VOID".equals(pool.get().getStatus())) {
+                bettingService.forgetPool(poolId);
+                return CompletableFuture.completedFuture(null);
+            }
+            if (!bettingService.canSettleHere(pool.get()) && !bettingService.isPastSettlementDeadline(pool.get())) {
+                // Leaves the pool to a node that captured its settlement price, rather than claiming
+                // it only to move it to RETRY; checks back in case a tick turns up here. Past the
+                // deadline any node claims it, to void it.
+                bettingPoolsRepository.transitionStatus(poolId, "LOCKED", "RETRY");
+                schedule("settle:" + poolId, retryTime(), "settle", settle(poolId));
+                return CompletableFuture.completedFuture(null);
+            }
+            String claim = "pool:" + poolId;
+            if (!clusterLeases.tryAcquire(claim, clusterConfig.getClaimLeaseMs())) {
+                // Another node is settling it; check back once its claim could have run out.
+                schedule("settle:" + poolId, OffsetDateTime.now().plusNanos(clusterConfig.getClaimLeaseMs() * 1_000_000L),
+                        "settle", settle(poolId));
+                return CompletableFuture.completedFuture(null);
+            }
+            try {
+                return bettingService.submitSettlement(pool.get()).thenAccept(settled -> {
+                    clusterLeases.release(claim);
+                    if (!settled) {
+                        schedule("settle:" + poolId, retryTime(), "settle", settle(poolId));
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                clusterLeases.release(claim);
+                log.warn("Settlement queue is full, pool {} is retried in {} ms", poolId, poolConfig.getRetryDelayMs());
+                schedule("settle:" + poolId, retryTime(), "settle", settle(poolId));
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Deadline deadline;
+            try {
+                deadline = deadlines.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (pending.get(deadline.key) != deadline) {
+                // Replaced by a later schedule of the same event.
+                continue;
+            }
+            lagTimers.get(deadline.event).record(Math.max(0, System.currentTimeMillis() - deadline.dueMillis), TimeUnit.MILLISECONDS);
+            CompletableFuture<?> done;
+            try {
+                done = deadline.action.get();
+            } catch (RuntimeException ex) {
+                log.error("Pool event {} failed, retried on the next sweep", deadline.key, ex);
+                done = CompletableFuture.completedFuture(null);
+            }
+            done.whenComplete((result, ex) -> pending.remove(deadline.key, deadline));
+        }
+    }
+
+    // Replaces whatever the key was waiting on.
+    private void schedule(String key, OffsetDateTime time, String event, Supplier<CompletableFuture<?>> action) {
+        Deadline deadline = newDeadline(key, time, event, action);
+        Deadline previous = pending.put(key, deadline);
+        if (previous != null) {
+            deadlines.remove(previous);
+        }
+        deadlines.add(deadline);
+    }
+
+    private void scheduleIfAbsent(String key, OffsetDateTime time, String event, Supplier<CompletableFuture<?>> action) {
+        Deadline deadline = newDeadline(key, time, event, action);
+        if (pending.putIfAbsent(key, deadline) == null) {
+            deadlines.add(deadline);
+        }
+    }
+
+    private Deadline newDeadline(String key, OffsetDateTime time, String event, Supplier<CompletableFuture<?>> action) {
+        return new Deadline(key, event, time.toInstant().toEpochMilli(), sequence.incrementAndGet(), action);
+    }
+
+    private OffsetDateTime retryTime() {
+        return OffsetDateTime.now().plusNanos(poolConfig.getRetryDelayMs() * 1_000_000L);
+    }
+
+    private static OffsetDateTime orNow(OffsetDateTime time) {
+        return time == null ? OffsetDateTime.now() : time;
+    }
+
+    private record Deadline(String key, String event, long dueMillis, long sequence,
+                            Supplier<CompletableFuture<?>> action) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Deadline that = (Deadline) other;
+            int byTime = Long.compare(dueMillis, that.dueMillis);
+            return byTime != 0 ? byTime : Long.compare(sequence, that.sequence);
+        }
     }
-}
\ No newline at end of file
+}
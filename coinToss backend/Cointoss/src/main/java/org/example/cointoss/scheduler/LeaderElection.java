@@ -0,0 +1,99 @@
+package org.example.cointoss.scheduler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.ClusterConfig;
+import org.example.cointoss.service.ClusterLeases;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Decides which node drives the game cycle, through the "game-cycle" lease.
+ *
+ * Every node tries to take or renew the lease on each heartbeat. The holder is the leader until
+ * it fails to renew, and a node that shuts down releases it, so another node takes over on its
+ * next heartbeat rather than after the lease runs out.
+ *
+ * Failover moves who opens pools, not the prices: each node captures ticks into its own
+ * PriceTickStore and nothing copies them between nodes. A new leader opens a market's next pool on
+ * its own latest tick, and a pool whose settlement time passed while only the old leader was
+ * capturing can only be settled by a node that was up at that moment.
+ */
+@Component
+@Slf4j
+public class LeaderElection {
+    static final String LEADER_LEASE = "game-cycle";
+
+    private final ClusterConfig config;
+    private final ClusterLeases clusterLeases;
+    private final Counter leadershipChanges;
+    private final List<Runnable> grantedListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean leader;
+    // Until when the lease is known to be ours; leadership is dropped past it even if the database is unreachable.
+    private volatile long leaseValidUntil;
+
+    public LeaderElection(ClusterConfig config, ClusterLeases clusterLeases, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.clusterLeases = clusterLeases;
+        this.leadershipChanges = Counter.builder("cointoss.cluster.leadership.changes")
+                .description("Times this node became or stopped being the leader")
+                .register(meterRegistry);
+        Gauge.builder("cointoss.cluster.leader", this, election -> election.isLeader() ? 1 : 0)
+                .description("1 while this node drives the game cycle")
+                .register(meterRegistry);
+    }
+
+    public boolean isLeader() {
+        return leader && System.currentTimeMillis() < leaseValidUntil;
+    }
+
+    /**
+     * Runs the listener on the heartbeat thread each time this node becomes the leader.
+     */
+    public void onGranted(Runnable listener) {
+        grantedListeners.add(listener);
+    }
+
+    // spring.task.scheduling.pool.size leaves a scheduler thread free for this, so a slow job
+    // elsewhere can never hold the renewal up past the lease.
+    @Scheduled(fixedDelayString = "${cointoss.cluster.heartbeat-interval-ms:2000}")
+    public void heartbeat() {
+        long startedAt = System.currentTimeMillis();
+        boolean acquired;
+        try {
+            acquired = clusterLeases.tryAcquire(LEADER_LEASE, config.getLeaderLeaseMs());
+        } catch (RuntimeException ex) {
+            log.warn("Failed to renew the leader lease: {}", ex.getMessage());
+            acquired = false;
+        }
+        boolean wasLeader = leader;
+        if (acquired) {
+            leaseValidUntil = startedAt + config.getLeaderLeaseMs();
+        }
+        leader = acquired;
+        if (acquired && !wasLeader) {
+            leadershipChanges.increment();
+            log.info("Node {} is now the game cycle leader", clusterLeases.nodeId());
+            for (Runnable listener : grantedListeners) {
+                listener.run();
+            }
+        } else if (!acquired && wasLeader) {
+            leadershipChanges.increment();
+            log.info("Node {} is no longer the game cycle leader", clusterLeases.nodeId());
+        }
+    }
+
+    @PreDestroy
+    public void resign() {
+        if (leader) {
+            leader = false;
+            clusterLeases.release(LEADER_LEASE);
+        }
+    }
+}
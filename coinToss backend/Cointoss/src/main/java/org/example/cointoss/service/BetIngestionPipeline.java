@@ -0,0 +1,339 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.BettingConfig;
+import org.example.cointoss.exceptions.BetQueueFullException;
+import org.example.cointoss.exceptions.BetRejectedException;
+import org.example.cointoss.repositories.WalletRepository;
+import org.example.cointoss.utilities.MoneyUtil;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Group-commits bets. placeBet only validates the request and queues it; a single writer thread
+ * drains the queue in micro-batches and commits each batch in one transaction: one JDBC batch of
+ * wallet debits and one JDBC batch of bet inserts, built straight from the user and pool ids.
+ * Pools are checked against the {@link OpenPoolCache}, so no entity is ever loaded. Each caller is
+ * told whether its own bet was accepted once the batch has committed.
+ */
+@Service
+@Slf4j
+public class BetIngestionPipeline {
+    // Same statement as WalletRepository.debit, sent as a JDBC batch.
+    private static final String DEBIT_SQL =
+            "UPDATE wallets SET balance = balance - ? WHERE user_id = ? AND balance >= ?";
+    private static final String INSERT_BET_SQL =
+            "INSERT INTO bets (user_id, pool_id, amount, direction, status, created_at) VALUES (?, ?, ?, ?, 'PENDING', ?)";
+
+    private final BettingConfig config;
+    private final JdbcTemplate jdbcTemplate;
+    private final OpenPoolCache openPoolCache;
+    private final TransactionTemplate transactionTemplate;
+    private final PoolLedger poolLedger;
+    private final PoolUpdateBroadcaster poolUpdateBroadcaster;
+    private final ClusterFanout clusterFanout;
+    private final WalletRepository walletRepository;
+    private final BlockingQueue<PendingBet> queue;
+    private final Timer commitTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter ledgerFailures;
+    private final Counter fanoutFailures;
+    private final Counter broadcastFailures;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public BetIngestionPipeline(BettingConfig config,
+                                JdbcTemplate jdbcTemplate,
+                                OpenPoolCache openPoolCache,
+                                PlatformTransactionManager transactionManager,
+                                PoolLedger poolLedger,
+                                PoolUpdateBroadcaster poolUpdateBroadcaster,
+                                ClusterFanout clusterFanout,
+                                WalletRepository walletRepository,
+                                MeterRegistry meterRegistry) {
+        this.config = config;
+        this.jdbcTemplate = jdbcTemplate;
+        this.openPoolCache = openPoolCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.poolLedger = poolLedger;
+        this.poolUpdateBroadcaster = poolUpdateBroadcaster;
+        this.clusterFanout = clusterFanout;
+        this.walletRepository = walletRepository;
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+
+        Gauge.builder("cointoss.bets.queue.depth", queue, BlockingQueue::size)
+                .description("Bets accepted by placeBet and waiting to be committed")
+                .register(meterRegistry);
+        this.commitTimer = Timer.builder("cointoss.bets.batch.commit")
+                .description("Time to commit one batch of bets")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("cointoss.bets.batch.size")
+                .description("Bets committed per batch")
+                .register(meterRegistry);
+        this.ledgerFailures = postCommitFailures(meterRegistry, "ledger");
+        this.fanoutFailures = postCommitFailures(meterRegistry, "fanout");
+        this.broadcastFailures = postCommitFailures(meterRegistry, "broadcast");
+    }
+
+    private static Counter postCommitFailures(MeterRegistry meterRegistry, String step) {
+        return Counter.builder("cointoss.bets.post_commit.failures")
+                .description("Steps that failed after a batch of bets had committed; the bets stand")
+                .tag("step", step)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "bet-ingestion");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Queues a bet for the next batch. Throws straight away if the queue is full.
+     */
+    public PendingBet submit(Long userId, Long poolId, BigDecimal amount, String direction) {
+        PendingBet bet = new PendingBet(userId, poolId, amount, direction);
+        // Stamped before the offer, since the writer may take the bet before offer returns.
+        bet.queuedNanos = System.nanoTime();
+        if (!queue.offer(bet)) {
+            throw new BetQueueFullException();
+        }
+        return bet;
+    }
+
+    private void run() {
+        List<PendingBet> batch = new ArrayList<>(config.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingBet first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getMaxLingerMs());
+                while (batch.size() < config.getBatchSize()) {
+                    PendingBet next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                // Only reached before or during the commit; afterwards nothing is thrown.
+                log.error("Bet ingestion batch failed", ex);
+                batch.forEach(bet -> bet.result.completeExceptionally(
+                        new BetRejectedException("failed", "Bet could not be recorded. Please retry.")));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingBet> batch) {
+        // Bets whose caller already gave up are dropped here; the rest can no longer be cancelled.
+        List<PendingBet> claimed = new ArrayList<>(batch.size());
+        long started = System.nanoTime();
+        for (PendingBet bet : batch) {
+            if (bet.state.compareAndSet(PendingBet.QUEUED, PendingBet.COMMITTING)) {
+                bet.claimedNanos = started;
+                claimed.add(bet);
+            }
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        List<PendingBet> accepted = transactionTemplate.execute(status -> write(claimed));
+        long committed = System.nanoTime();
+        commitTimer.record(committed - started, TimeUnit.NANOSECONDS);
+        batchSizes.record(claimed.size());
+
+        // The bets are debited and recorded, so their callers are told so before anything else
+        // can fail: a bet reported as failed here would be placed twice by a client that retries.
+        for (PendingBet bet : accepted) {
+            bet.committedNanos = committed;
+            bet.result.complete(null);
+        }
+
+        // Kobo added to each pool by the batch, UP then DOWN.
+        Map<Long, long[]> touchedPools = new LinkedHashMap<>();
+        for (PendingBet bet : accepted) {
+            long amountMinor = MoneyUtil.toMinor(bet.amount);
+            try {
+                poolLedger.record(bet.poolId, bet.direction, amountMinor);
+            } catch (RuntimeException ex) {
+                // The live totals miss the bet until the pool locks and is reconciled from the bets.
+                postCommitFailed(ledgerFailures, "record the ledger totals", bet.poolId, ex);
+            }
+            touchedPools.computeIfAbsent(bet.poolId, id -> new long[2])["UP".equals(bet.direction) ? 0 : 1] += amountMinor;
+        }
+        // The other nodes get the batch's bets per pool; subscribers get the conflated totals.
+        touchedPools.forEach((poolId, added) -> {
+            try {
+                clusterFanout.poolBets(poolId, added[0], added[1]);
+            } catch (RuntimeException ex) {
+                postCommitFailed(fanoutFailures, "relay the bets", poolId, ex);
+            }
+            try {
+                poolUpdateBroadcaster.broadcastPoolUpdate(poolId);
+            } catch (RuntimeException ex) {
+                postCommitFailed(broadcastFailures, "broadcast the totals", poolId, ex);
+            }
+        });
+    }
+
+    private void postCommitFailed(Counter failures, String step, Long poolId, RuntimeException ex) {
+        failures.increment();
+        log.warn("Bets on pool {} were committed but failed to {}: {}", poolId, step, ex.getMessage());
+    }
+
+    /**
+     * Runs inside the batch transaction. Rejected bets are completed here; the accepted ones are
+     * returned and only completed once the transaction has committed.
+     */
+    private List<PendingBet> write(List<PendingBet> batch) {
+        // Group by user, in user id order so that concurrent writers lock wallets in the same order.
+        Map<Long, List<PendingBet>> betsByUser = new TreeMap<>();
+        for (PendingBet bet : batch) {
+            // Checked again here because the pool may have reached its lock time while the bet was queued.
+            if (!openPoolCache.isOpen(bet.poolId)) {
+                bet.result.completeExceptionally(new BetRejectedException("pool_closed", "Betting pool is not open for bets."));
+                continue;
+            }
+            betsByUser.computeIfAbsent(bet.userId, id -> new ArrayList<>()).add(bet);
+        }
+        List<PendingBet> accepted = debit(betsByUser);
+
+        if (!accepted.isEmpty()) {
+            OffsetDateTime now = OffsetDateTime.now();
+            jdbcTemplate.batchUpdate(INSERT_BET_SQL, accepted, accepted.size(), (ps, bet) -> {
+                ps.setLong(1, bet.userId);
+                ps.setLong(2, bet.poolId);
+                ps.setBigDecimal(3, bet.amount);
+                ps.setString(4, bet.direction);
+                ps.setObject(5, now);
+            });
+        }
+        return accepted;
+    }
+
+    /**
+     * Debits each user's combined stake with one conditional UPDATE per wallet, all sent as one
+     * JDBC batch. A user whose combined stake does not fit is retried bet by bet, so the bets
+     * that do fit are still accepted.
+     */
+    private List<PendingBet> debit(Map<Long, List<PendingBet>> betsByUser) {
+        if (betsByUser.isEmpty()) {
+            return List.of();
+        }
+        List<Long> userIds = new ArrayList<>(betsByUser.keySet());
+        List<BigDecimal> totals = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            totals.add(betsByUser.get(userId).stream().map(bet -> bet.amount).reduce(BigDecimal.ZERO, BigDecimal::add));
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(DEBIT_SQL, indices(userIds.size()), userIds.size(), (ps, i) -> {
+            ps.setBigDecimal(1, totals.get(i));
+            ps.setLong(2, userIds.get(i));
+            ps.setBigDecimal(3, totals.get(i));
+        });
+
+        List<PendingBet> accepted = new ArrayList<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            List<PendingBet> userBets = betsByUser.get(userIds.get(i));
+            if (counts[0][i] > 0) {
+                accepted.addAll(userBets);
+                continue;
+            }
+            for (PendingBet bet : userBets) {
+                if (userBets.size() > 1 && walletRepository.debit(bet.userId, bet.amount) == 1) {
+                    accepted.add(bet);
+                } else {
+                    bet.result.completeExceptionally(new BetRejectedException("insufficient_funds", "Insufficient funds."));
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private static List<Integer> indices(int size) {
+        List<Integer> indices = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            indices.add(i);
+        }
+        return indices;
+    }
+
+    public static class PendingBet {
+        private static final int QUEUED = 0;
+        private static final int COMMITTING = 1;
+        private static final int CANCELLED = 2;
+
+        private final Long userId;
+        private final Long poolId;
+        private final BigDecimal amount;
+        private final String direction;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        @Getter
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        // When the bet was queued, when the writer took it into a batch, and when that batch
+        // committed (System.nanoTime). Written before the result completes, so whoever sees the
+        // result sees them too.
+        @Getter
+        private long queuedNanos;
+        @Getter
+        private long claimedNanos;
+        @Getter
+        private long committedNanos;
+
+        PendingBet(Long userId, Long poolId, BigDecimal amount, String direction) {
+            this.userId = userId;
+            this.poolId = poolId;
+            this.amount = amount;
+            this.direction = direction;
+        }
+
+        /**
+         * Withdraws the bet if the writer has not picked it up yet. Returns false if the bet is
+         * already part of a batch, in which case its result is coming.
+         */
+        public boolean cancel() {
+            return state.compareAndSet(QUEUED, CANCELLED);
+        }
+    }
+}
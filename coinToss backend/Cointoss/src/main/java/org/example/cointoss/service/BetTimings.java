@@ -0,0 +1,72 @@
+package org.example.cointoss.service;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Where one placeBet call spent its time, stage by stage, for a Server-Timing header. Only
+ * created for the sampled requests that get one; every call feeds the cointoss.bets.stage
+ * histograms either way.
+ */
+public class BetTimings {
+    public enum Stage {
+        // Reading the user from the security context.
+        AUTH,
+        // Checking the pool is open and the direction is valid.
+        VALIDATE,
+        // Handing the bet to the ingestion queue.
+        ENQUEUE,
+        // Waiting in the queue until the writer takes it into a batch.
+        QUEUE,
+        // The batch transaction: wallet debits and bet inserts.
+        COMMIT,
+        // From the commit until the caller's thread picks the result up.
+        WAKE;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+
+        public String label() {
+            return label;
+        }
+    }
+
+    static final Stage[] STAGES = Stage.values();
+
+    // -1 for the stages the bet never reached.
+    private final long[] stageNanos = new long[STAGES.length];
+    private long totalNanos;
+
+    public BetTimings() {
+        Arrays.fill(stageNanos, -1);
+    }
+
+    void record(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()] = nanos;
+    }
+
+    void total(long nanos) {
+        totalNanos = nanos;
+    }
+
+    /**
+     * The Server-Timing header value, e.g. "auth;dur=0.004, validate;dur=0.011, ...,
+     * total;dur=6.212", in milliseconds. Stages the bet never reached are left out.
+     */
+    public String serverTiming() {
+        StringBuilder header = new StringBuilder();
+        for (Stage stage : STAGES) {
+            if (stageNanos[stage.ordinal()] >= 0) {
+                append(header, stage.label(), stageNanos[stage.ordinal()]);
+            }
+        }
+        append(header, "total", totalNanos);
+        return header.toString();
+    }
+
+    private static void append(StringBuilder header, String name, long nanos) {
+        if (!header.isEmpty()) {
+            header.append(", ");
+        }
+        header.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0));
+    }
+}
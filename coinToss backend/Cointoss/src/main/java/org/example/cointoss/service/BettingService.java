@@ -1,17 +1,16 @@
 // src/main/java/org/example/cointoss/service/BettingService.java
 package org.example.cointoss.service;
 
-import lombok.RequiredArgsConstructor;
-import org.example.cointoss.dtos.PoolUpdateDto; 
-import org.example.cointoss.entities.Bets;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.BettingConfig;
+import org.example.cointoss.config.PoolConfig;
 import org.example.cointoss.entities.BettingPools;
-import org.example.cointoss.entities.User;
-import org.example.cointoss.entities.Wallet;
-import org.example.cointoss.repositories.BetsRepository;
+import org.example.cointoss.exceptions.BetQueueFullException;
+import org.example.cointoss.exceptions.BetRejectedException;
 import org.example.cointoss.repositories.BettingPoolsRepository;
-import org.example.cointoss.repositories.UserRepository;
-import org.example.cointoss.repositories.WalletRepository;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,195 +18,354 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.OffsetDateTime;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
-@RequiredArgsConstructor // Lombok creates a constructor with all final fields
+@Slf4j
 public class BettingService {
-    private final UserRepository userRepository;
-    private final WalletRepository walletRepository;
+    // Reasons placeBet counts rejections under; anything else is counted as "error".
+    private static final List<String> REJECT_REASONS = List.of(
+            "pool_closed", "invalid_direction", "insufficient_funds", "queue_full", "timeout", "failed", "error");
+    private static final List<String> SETTLEMENT_OUTCOMES = List.of("settled", "voided", "retry", "failed");
+
     private final BettingPoolsRepository bettingPoolsRepository;
-    private final BetsRepository betsRepository;
-    private final CryptoPaymentGateway priceService;
-     private final SimpMessagingTemplate messagingTemplate;
+    private final SettlementEngine settlementEngine;
+    private final PriceTickStore priceTickStore;
+    private final PoolLedger poolLedger;
+    private final PoolUpdateBroadcaster poolUpdateBroadcaster;
+    private final OpenPoolCache openPoolCache;
+    private final BetIngestionPipeline betIngestionPipeline;
+    private final BettingConfig bettingConfig;
+    private final PoolConfig poolConfig;
+    private final SettlementWorkers settlementWorkers;
+    private final ClusterFanout clusterFanout;
+    private final MeterRegistry meterRegistry;
+    // Registered up front so recording a bet allocates nothing.
+    private final Timer betsAccepted;
+    private final Map<String, Timer> betsRejected = new HashMap<>();
+    private final Map<BetTimings.Stage, Timer> stageTimers = new EnumMap<>(BetTimings.Stage.class);
+    private final Map<String, Timer> settlementTimers = new HashMap<>();
+    private final DistributionSummary settledBets;
 
-    // This annotation is CRITICAL. It ensures that all database operations within this method
-    // either all succeed, or all fail together. This prevents data corruption, like a user's
-    // balance being debited without their bet being recorded.
-    @Transactional
+    public BettingService(BettingPoolsRepository bettingPoolsRepository,
+                          SettlementEngine settlementEngine,
+                          PriceTickStore priceTickStore,
+                          PoolLedger poolLedger,
+                          PoolUpdateBroadcaster poolUpdateBroadcaster,
+                          OpenPoolCache openPoolCache,
+                          BetIngestionPipeline betIngestionPipeline,
+                          BettingConfig bettingConfig,
+                          PoolConfig poolConfig,
+                          SettlementWorkers settlementWorkers,
+                          ClusterFanout clusterFanout,
+                          MeterRegistry meterRegistry) {
+        this.bettingPoolsRepository = bettingPoolsRepository;
+        this.settlementEngine = settlementEngine;
+        this.priceTickStore = priceTickStore;
+        this.poolLedger = poolLedger;
+        this.poolUpdateBroadcaster = poolUpdateBroadcaster;
+        this.openPoolCache = openPoolCache;
+        this.betIngestionPipeline = betIngestionPipeline;
+        this.bettingConfig = bettingConfig;
+        this.poolConfig = poolConfig;
+        this.settlementWorkers = settlementWorkers;
+        this.clusterFanout = clusterFanout;
+        this.meterRegistry = meterRegistry;
+        this.betsAccepted = betsPlaced(meterRegistry, "accepted", "none");
+        for (String reason : REJECT_REASONS) {
+            betsRejected.put(reason, betsPlaced(meterRegistry, "rejected", reason));
+        }
+        for (BetTimings.Stage stage : BetTimings.STAGES) {
+            stageTimers.put(stage, Timer.builder("cointoss.bets.stage")
+                    .description("Time placeBet spends in each stage of accepting a bet")
+                    .publishPercentileHistogram()
+                    .tag("stage", stage.label())
+                    .register(meterRegistry));
+        }
+        for (String outcome : SETTLEMENT_OUTCOMES) {
+            settlementTimers.put(outcome, Timer.builder("cointoss.settlement.pool")
+                    .description("Time to settle one pool, price lookup included")
+                    .publishPercentileHistogram()
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+        this.settledBets = DistributionSummary.builder("cointoss.settlement.bets")
+                .description("Bets in each settled pool")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer betsPlaced(MeterRegistry meterRegistry, String outcome, String reason) {
+        return Timer.builder("cointoss.bets.placed")
+                .description("Time for placeBet to accept or reject a bet")
+                .publishPercentileHistogram()
+                .tag("outcome", outcome)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Places a bet for the authenticated user. The bet is validated here and then committed by
+     * the {@link BetIngestionPipeline} together with other bets; this call returns once that
+     * batch has committed, or throws if the bet was rejected.
+     */
     public void placeBet(Long poolId, BigDecimal amount, String direction) {
-        // 1. Get the currently authenticated user's ID from the security context.
-        Long userId = (Long) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        placeBet(poolId, amount, direction, null);
+    }
 
-        // 2. Fetch the necessary entities from the database.
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalStateException("User not found"));
+    /**
+     * As {@link #placeBet(Long, BigDecimal, String)}, also filling in how long each stage took
+     * when timings is not null.
+     */
+    public void placeBet(Long poolId, BigDecimal amount, String direction, BetTimings timings) {
+        long startNanos = System.nanoTime();
+        try {
+            submitAndAwait(poolId, amount, direction, startNanos, timings);
+        } catch (RuntimeException ex) {
+            long elapsed = System.nanoTime() - startNanos;
+            betsRejected.getOrDefault(rejectReason(ex), betsRejected.get("error")).record(elapsed, TimeUnit.NANOSECONDS);
+            if (timings != null) {
+                timings.total(elapsed);
+            }
+            throw ex;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        betsAccepted.record(elapsed, TimeUnit.NANOSECONDS);
+        if (timings != null) {
+            timings.total(elapsed);
+        }
+    }
 
-        BettingPools pool = bettingPoolsRepository.findById(poolId)
-                .orElseThrow(() -> new IllegalArgumentException("Betting pool not found"));
+    private void submitAndAwait(Long poolId, BigDecimal amount, String direction, long startNanos, BetTimings timings) {
+        // 1. Get the currently authenticated user's ID from the security context.
+        Long userId = (Long) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        long authenticated = System.nanoTime();
+        stage(BetTimings.Stage.AUTH, authenticated - startNanos, timings);
 
-        // 3. Perform business logic validations.
-        if (!"OPEN".equals(pool.getStatus())) {
-            throw new IllegalStateException("Betting pool is not open for bets.");
+        // 2. Perform business logic validations. Neither the user nor the pool is loaded: the pool
+        // is checked against the cached betting window and the wallet balance is checked by the
+        // pipeline's conditional debit.
+        if (!openPoolCache.isOpen(poolId)) {
+            throw new BetRejectedException("pool_closed", "Betting pool is not open for bets.");
         }
         if (!"UP".equalsIgnoreCase(direction) && !"DOWN".equalsIgnoreCase(direction)) {
             throw new IllegalArgumentException("Invalid direction. Must be 'UP' or 'DOWN'.");
         }
+        long validated = System.nanoTime();
+        stage(BetTimings.Stage.VALIDATE, validated - authenticated, timings);
 
-        // 4. Check and update the user's wallet balance.
-        Wallet wallet = walletRepository.findByUserId(user.getId())
-                .orElseThrow(() -> new IllegalStateException("Wallet not found for user"));
+        // 3. Queue the bet and wait for its batch.
+        BetIngestionPipeline.PendingBet bet = betIngestionPipeline.submit(userId, poolId, amount, direction.toUpperCase());
+        stage(BetTimings.Stage.ENQUEUE, bet.getQueuedNanos() - validated, timings);
+        awaitResult(bet);
+        // Only an accepted bet has been through every stage of the batch.
+        long resumed = System.nanoTime();
+        stage(BetTimings.Stage.QUEUE, bet.getClaimedNanos() - bet.getQueuedNanos(), timings);
+        stage(BetTimings.Stage.COMMIT, bet.getCommittedNanos() - bet.getClaimedNanos(), timings);
+        stage(BetTimings.Stage.WAKE, resumed - bet.getCommittedNanos(), timings);
+    }
 
-        if (wallet.getBalance().compareTo(amount) < 0) {
-            throw new IllegalStateException("Insufficient funds.");
+    private void stage(BetTimings.Stage stage, long nanos, BetTimings timings) {
+        stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+        if (timings != null) {
+            timings.record(stage, nanos);
         }
-        wallet.setBalance(wallet.getBalance().subtract(amount));
-        walletRepository.save(wallet);
-
-        // 5. Create the new bet record.
-        Bets newBet = new Bets();
-        newBet.setUser(user);
-        newBet.setPool(pool);
-        newBet.setAmount(amount);
-        newBet.setDirection(direction.toUpperCase());
-        newBet.setStatus("PENDING");
-        betsRepository.save(newBet);
+    }
 
-        // 6. Update the pool totals.
-        if ("UP".equalsIgnoreCase(direction)) {
-            pool.setTotalUpPool(pool.getTotalUpPool().add(amount));
-        } else {
-            pool.setTotalDownPool(pool.getTotalDownPool().add(amount));
+    private static String rejectReason(RuntimeException ex) {
+        if (ex instanceof BetRejectedException rejected) {
+            return rejected.getReason();
         }
-        
-        BettingPools updatedPool = bettingPoolsRepository.save(pool);
-
-        broadcastPoolUpdate(updatedPool);
+        if (ex instanceof BetQueueFullException) {
+            return "queue_full";
+        }
+        if (ex instanceof IllegalArgumentException) {
+            return "invalid_direction";
+        }
+        return "error";
     }
 
-
-    private void broadcastPoolUpdate(BettingPools pool) {
-        PoolUpdateDto updateDto = new PoolUpdateDto(
-                pool.getId(),
-                pool.getTotalUpPool(),
-                pool.getTotalDownPool()
-        );
-        // This sends the DTO to the specific topic for this pool.
-        // Any client subscribed to this topic will receive the message instantly.
-        messagingTemplate.convertAndSend("/topic/pool/" + pool.getId(), updateDto);
-        System.out.println("WEBSOCKET: Broadcasted update for pool ID " + pool.getId());
+    private void awaitResult(BetIngestionPipeline.PendingBet bet) {
+        try {
+            try {
+                bet.getResult().get(bettingConfig.getAcceptTimeoutMs(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                if (bet.cancel()) {
+                    throw new BetRejectedException("timeout", "Bet was not processed in time. Please retry.");
+                }
+                // Already part of a batch that is committing, so its outcome is moments away.
+                bet.getResult().get();
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new BetRejectedException("failed", "Bet could not be recorded. Please retry.", ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BetRejectedException("failed", "Bet could not be recorded. Please retry.", ex);
+        }
     }
 
 
+    /**
+     * Opens a pool for the market now. Empty if no recent price of its pair has been captured.
+     */
     @Transactional
-    public void createNextPool() {
-        // In the future, you could check if another pool is already open.
-        // For now, we'll just create a new one.
-        String assetPair = "BTC/USDT";
+    public Optional<BettingPools> createNextPool(PoolConfig.Market market) {
+        String assetPair = market.getAssetPair();
 
-        BigDecimal startPrice = priceService.getBuyPrice(assetPair.replace("/", ""))
-                .getData()
-                .getTicker()
-                .getLastPrice();
+        // Opens on the tick captured closest to now; no call to the exchange happens here.
+        OffsetDateTime now = OffsetDateTime.now();
+        Optional<PriceTickStore.Tick> tick = priceTickStore.closestTo(assetPair, now);
+        if (tick.isEmpty()) {
+            System.out.println("No recent " + assetPair + " price captured, not opening a pool this cycle.");
+            return Optional.empty();
+        }
+        BigDecimal startPrice = tick.get().price().setScale(2, RoundingMode.HALF_UP);
 
         BettingPools newPool = new BettingPools();
         newPool.setAssetPair(assetPair);
         newPool.setStatus("OPEN");
         newPool.setStartPrice(startPrice);
 
-        // Set the times for our 30-second test cycle (15s betting, 15s waiting)
-        // In production: 10-minute cycle (5 minutes betting, 5 minutes waiting)
-        OffsetDateTime now = OffsetDateTime.now();
+        // Bets are taken until the lock time; the pool settles, and the next one opens, a round after opening.
         newPool.setOpenTime(now);
-        newPool.setLockTime(now.plusSeconds(15));  // Test: 15 seconds | Production: plusMinutes(5)
-        newPool.setSettlementTime(now.plusSeconds(30)); // Test: 30 seconds | Production: plusMinutes(10)
+        newPool.setLockTime(now.plusSeconds(market.getBettingSeconds()));
+        newPool.setSettlementTime(now.plusSeconds(market.getRoundSeconds()));
 
         bettingPoolsRepository.save(newPool);
-        System.out.println("Created new betting pool with start price: " + startPrice);
+        System.out.println("Created new " + assetPair + " betting pool with start price: " + startPrice);
+        return Optional.of(newPool);
     }
 
     /**
-     * Finds any open pools whose lock time has passed and changes their status to "LOCKED".
+     * Changes an open pool's status to "LOCKED", then the ledger writes its final totals. Returns
+     * false if the pool was not open, e.g. because it is already locked.
      */
-    @Transactional
-    public void lockDuePools() {
-        List<BettingPools> poolsToLock = bettingPoolsRepository.findAllByStatusAndLockTimeBefore("OPEN", OffsetDateTime.now());
-        for (BettingPools pool : poolsToLock) {
-            pool.setStatus("LOCKED");
-            bettingPoolsRepository.save(pool);
-            System.out.println("Locked pool with ID: " + pool.getId());
+    public boolean lockPool(Long poolId) {
+        if (bettingPoolsRepository.transitionStatus(poolId, "OPEN", "LOCKED") == 0) {
+            return false;
         }
+        poolLedger.close(poolId);
+        // Subscribers see the final totals now rather than on the next broadcast interval.
+        poolUpdateBroadcaster.flush(poolId);
+        System.out.println("Locked pool with ID: " + poolId);
+        return true;
     }
 
     /**
-     * Finds any locked pools whose settlement time has passed and settles them.
+     * Settles a locked or RETRY pool on the {@link SettlementWorkers}. Completes with true once it
+     * is SETTLED or VOID, or false if it has to be tried again later. Throws
+     * {@link RejectedExecutionException} if the workers' queue is full.
      */
-    @Transactional
-    public void settleDuePools() {
-        List<BettingPools> poolsToSettle = bettingPoolsRepository.findAllByStatusAndSettlementTimeBefore("LOCKED", OffsetDateTime.now());
-        for (BettingPools pool : poolsToSettle) {
-            settlePool(pool);
+    public CompletableFuture<Boolean> submitSettlement(BettingPools pool) {
+        return settlementWorkers.supply(() -> settleAndRecord(pool));
+    }
+
+    private boolean settleAndRecord(BettingPools pool) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failed";
+        try {
+            outcome = settlePool(pool);
+        } catch (RuntimeException ex) {
+            log.error("Failed to settle pool {}, will retry on the next run", pool.getId(), ex);
+        } finally {
+            sample.stop(settlementTimers.get(outcome));
         }
+        return "settled".equals(outcome) || "voided".equals(outcome);
+    }
+
+    /**
+     * Whether this node can settle the pool: it already has a checkpointed outcome, or this node's
+     * {@link PriceTickStore} holds a tick near its settlement time. Ticks are not shared between
+     * nodes, so a node that was down at the settlement time has none.
+     */
+    public boolean canSettleHere(BettingPools pool) {
+        return settlementEngine.findPlan(pool.getId()).isPresent()
+                || priceTickStore.closestTo(pool.getAssetPair(), pool.getSettlementTime()).isPresent();
+    }
+
+    /**
+     * Whether the pool has waited for a settlement price for as long as it may. Any node can then
+     * void it, since that needs no price.
+     */
+    public boolean isPastSettlementDeadline(BettingPools pool) {
+        return OffsetDateTime.now().isAfter(
+                pool.getSettlementTime().plusNanos(poolConfig.getSettlementDeadlineMs() * 1_000_000L));
     }
 
     /**
-     * The core settlement logic for a single pool.
+     * Drops a settled pool from this node's memory, wherever it was settled.
      */
-    private void settlePool(BettingPools pool) {
-        BigDecimal endPrice = priceService.getBuyPrice(pool.getAssetPair().replace("/", ""))
-                .getData()
-                .getTicker()
-                .getLastPrice();
-        pool.setEndPrice(endPrice);
-
-        String winningDirection;
-        // The price went up if endPrice is greater than startPrice
-        if (endPrice.compareTo(pool.getStartPrice()) > 0) {
-            winningDirection = "UP";
-        } else {
-            winningDirection = "DOWN";
-        }
-
-        BigDecimal totalPool = pool.getTotalUpPool().add(pool.getTotalDownPool());
-        BigDecimal winningsPool = totalPool.multiply(new BigDecimal("0.95")); // 5% house rake
-
-        BigDecimal winningSideTotal = "UP".equals(winningDirection) ? pool.getTotalUpPool() : pool.getTotalDownPool();
-
-        // Find all bets for this pool
-        List<Bets> betsInPool = betsRepository.findAllByPoolId(pool.getId());
-
-        for (Bets bet : betsInPool) {
-            if (bet.getDirection().equals(winningDirection)) {
-                // This is a winning bet
-                if (winningSideTotal.compareTo(BigDecimal.ZERO) > 0) {
-                    BigDecimal proportion = bet.getAmount().divide(winningSideTotal, 10, RoundingMode.HALF_UP);
-                    BigDecimal payout = winningsPool.multiply(proportion);
-                    
-                    bet.setPayout(payout);
-                    bet.setStatus("WON");
-
-                    // Credit the user's wallet
-                    Wallet wallet = walletRepository.findByUserId(bet.getUser().getId()).orElseThrow();
-                    wallet.setBalance(wallet.getBalance().add(payout));
-                    walletRepository.save(wallet);
-                } else {
-                    // This case handles if there are winners but the winning pool was 0, they get their money back.
-                    bet.setPayout(bet.getAmount());
-                    bet.setStatus("WON"); // Technically a push/refund
-                    Wallet wallet = walletRepository.findByUserId(bet.getUser().getId()).orElseThrow();
-                    wallet.setBalance(wallet.getBalance().add(bet.getAmount()));
-                    walletRepository.save(wallet);
+    public void forgetPool(Long poolId) {
+        poolLedger.evict(poolId);
+        openPoolCache.evict(poolId);
+        poolUpdateBroadcaster.evict(poolId);
+    }
+
+    /**
+     * The core settlement logic for a single pool. Returns the outcome it is timed under.
+     */
+    private String settlePool(BettingPools pool) {
+        // A pool whose settlement was interrupted resumes with the outcome it started with.
+        SettlementEngine.Plan plan = settlementEngine.findPlan(pool.getId()).orElse(null);
+        if (plan == null) {
+            // Settles on the tick captured closest to the settlement time. Without one close enough
+            // the pool waits in RETRY rather than settling on a price from the wrong moment, until
+            // its deadline passes and it is voided.
+            Optional<PriceTickStore.Tick> tick = priceTickStore.closestTo(pool.getAssetPair(), pool.getSettlementTime());
+            if (tick.isEmpty()) {
+                if (isPastSettlementDeadline(pool)) {
+                    return voidPool(pool);
                 }
+                bettingPoolsRepository.updateStatus(pool.getId(), "RETRY");
+                System.out.println("No " + pool.getAssetPair() + " price captured near the settlement time of pool ID " + pool.getId() + ", moved to RETRY.");
+                return "retry";
+            }
+            BigDecimal endPrice = tick.get().price().setScale(2, RoundingMode.HALF_UP);
+
+            String winningDirection;
+            // The price went up if endPrice is greater than startPrice
+            if (endPrice.compareTo(pool.getStartPrice()) > 0) {
+                winningDirection = "UP";
             } else {
-                // This is a losing bet
-                bet.setStatus("LOST");
-                bet.setPayout(BigDecimal.ZERO);
+                winningDirection = "DOWN";
             }
-            betsRepository.save(bet);
+            plan = settlementEngine.plan(pool.getId(), endPrice, winningDirection);
         }
 
-        pool.setStatus("SETTLED");
-        bettingPoolsRepository.save(pool);
-        System.out.println("Settled pool ID " + pool.getId() + " with end price " + endPrice + ". Winning direction: " + winningDirection);
+        // Pays the winners a chunk per transaction, then marks the pool SETTLED. The totals are
+        // taken from the bets themselves, so a bet that committed just as the pool locked is still counted.
+        settlementEngine.settle(plan);
+        settledBets.record(plan.betCount());
+
+        forgetPool(pool.getId());
+        // Every bettor is sent their results, so nobody needs to refetch their wallet.
+        clusterFanout.poolSettled(pool.getId());
+        System.out.println("Settled pool ID " + pool.getId() + " (" + plan.betCount() + " bets) with end price " + plan.endPrice() + ". Winning direction: " + plan.winningDirection());
+        return "settled";
+    }
+
+    private String voidPool(BettingPools pool) {
+        if (!settlementEngine.voidPool(pool.getId())) {
+            // Its settlement started elsewhere in the meantime, so it resumes from the checkpoint next time.
+            return "retry";
+        }
+        forgetPool(pool.getId());
+        // Bettors are sent their refunded bets just as they would their results.
+        clusterFanout.poolSettled(pool.getId());
+        log.warn("No {} price was captured for pool {} by its settlement deadline; voided it and refunded every bet",
+                pool.getAssetPair(), pool.getId());
+        return "voided";
     }
 }
\ No newline at end of file
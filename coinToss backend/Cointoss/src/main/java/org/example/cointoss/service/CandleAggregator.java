@@ -0,0 +1,247 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.CandleConfig;
+import org.example.cointoss.config.PoolConfig;
+import org.example.cointoss.config.PriceConfig;
+import org.example.cointoss.dtos.CandleDto;
+import org.example.cointoss.dtos.PriceUpdateDto;
+import org.example.cointoss.scheduler.LeaderElection;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds 1s, 1m and 5m OHLC candles per pair as ticks are captured, keeping the most recent ones
+ * in memory for chart snapshots.
+ *
+ * Ticks only update the candles; {@link #publish()} sends each pair that changed since the last
+ * run to /topic/price/{pair} once per publish interval, so the topic rate stays fixed however fast
+ * ticks arrive. The pair in the topic and in the REST path is written with a dash, e.g. BTC-USDT.
+ */
+@Service
+@Slf4j
+public class CandleAggregator {
+    private final CandleConfig config;
+    private final PriceConfig priceConfig;
+    private final PoolConfig poolConfig;
+    private final PriceTickStore priceTickStore;
+    private final ClusterFanout clusterFanout;
+    private final LeaderElection leaderElection;
+    private final Timer broadcastTimer;
+
+    private final Map<String, PairCandles> pairs = new ConcurrentHashMap<>();
+
+    public CandleAggregator(CandleConfig config,
+                            PriceConfig priceConfig,
+                            PoolConfig poolConfig,
+                            PriceTickStore priceTickStore,
+                            ClusterFanout clusterFanout,
+                            LeaderElection leaderElection,
+                            MeterRegistry meterRegistry) {
+        this.config = config;
+        this.priceConfig = priceConfig;
+        this.poolConfig = poolConfig;
+        this.priceTickStore = priceTickStore;
+        this.clusterFanout = clusterFanout;
+        this.leaderElection = leaderElection;
+        this.broadcastTimer = Timer.builder("cointoss.websocket.broadcast")
+                .description("Time to hand a message to the broker for every subscriber")
+                .publishPercentileHistogram()
+                .tag("topic", "price")
+                .register(meterRegistry);
+    }
+
+    public enum Interval {
+        ONE_SECOND("1s", 1_000),
+        ONE_MINUTE("1m", 60_000),
+        FIVE_MINUTES("5m", 300_000);
+
+        private final String label;
+        private final long millis;
+
+        Interval(String label, long millis) {
+            this.label = label;
+            this.millis = millis;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public static Optional<Interval> fromLabel(String label) {
+            return Arrays.stream(values()).filter(interval -> interval.label.equals(label)).findFirst();
+        }
+    }
+
+    /**
+     * Rebuilds the candles of the captured pairs from the ticks still in their rings, so a
+     * restart does not leave the charts empty.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedFromTickStore() {
+        OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime from = now.minusNanos(Interval.FIVE_MINUTES.millis * config.getHistory() * 1_000_000L);
+        for (String assetPair : PriceCaptureService.capturedPairs(priceConfig, poolConfig)) {
+            for (PriceTickStore.Tick tick : priceTickStore.range(assetPair, from, now.plusSeconds(1))) {
+                onTick(assetPair, tick.capturedAt().toInstant().toEpochMilli(), tick.price());
+            }
+        }
+    }
+
+    /**
+     * Adds a captured tick to every interval's candle in progress.
+     */
+    public void onTick(String assetPair, long epochMillis, BigDecimal price) {
+        PairCandles candles = pairs.computeIfAbsent(assetPair, pair -> new PairCandles(config.getHistory()));
+        synchronized (candles) {
+            for (Series series : candles.series) {
+                series.add(epochMillis, price);
+            }
+            candles.lastPrice = price;
+            candles.lastTickMillis = epochMillis;
+            candles.dirty = true;
+        }
+    }
+
+    /**
+     * Recent candles of a pair, oldest first, ending with the one in progress.
+     */
+    public List<CandleDto> snapshot(String assetPair, Interval interval, int limit) {
+        PairCandles candles = pairs.get(assetPair);
+        if (candles == null) {
+            return List.of();
+        }
+        synchronized (candles) {
+            return candles.series[interval.ordinal()].recent(limit);
+        }
+    }
+
+    /**
+     * Every node captures the same prices, so only the leader publishes and the {@link ClusterFanout}
+     * relays its updates to the subscribers of every node.
+     */
+    @Scheduled(fixedDelayString = "${cointoss.candles.publish-interval-ms:500}")
+    public void publish() {
+        if (!leaderElection.isLeader()) {
+            return;
+        }
+        pairs.forEach((assetPair, candles) -> {
+            PriceUpdateDto update;
+            synchronized (candles) {
+                if (!candles.dirty) {
+                    return;
+                }
+                candles.dirty = false;
+                Map<String, CandleDto> current = new LinkedHashMap<>();
+                for (Interval interval : Interval.values()) {
+                    current.put(interval.label, candles.series[interval.ordinal()].current());
+                }
+                update = new PriceUpdateDto(assetPair, candles.lastPrice, toTime(candles.lastTickMillis), current);
+            }
+            long startNanos = System.nanoTime();
+            clusterFanout.broadcast("/topic/price/" + topicName(assetPair), update);
+            broadcastTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    public static String topicName(String assetPair) {
+        return assetPair.replace("/", "-");
+    }
+
+    public static String assetPair(String topicName) {
+        return topicName.replace("-", "/");
+    }
+
+    private static OffsetDateTime toTime(long epochMillis) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    private static class PairCandles {
+        private final Series[] series;
+        private BigDecimal lastPrice;
+        private long lastTickMillis;
+        private boolean dirty;
+
+        PairCandles(int history) {
+            series = new Series[Interval.values().length];
+            for (Interval interval : Interval.values()) {
+                series[interval.ordinal()] = new Series(interval.millis, history);
+            }
+        }
+    }
+
+    /**
+     * One interval's candle in progress plus a ring of the last completed ones.
+     */
+    private static class Series {
+        private final long millis;
+        private final CandleDto[] completed;
+        private int completedCount;
+        private long openMillis = Long.MIN_VALUE;
+        private BigDecimal open;
+        private BigDecimal high;
+        private BigDecimal low;
+        private BigDecimal close;
+        private long ticks;
+
+        Series(long millis, int history) {
+            this.millis = millis;
+            this.completed = new CandleDto[history];
+        }
+
+        void add(long epochMillis, BigDecimal price) {
+            long bucket = epochMillis - Math.floorMod(epochMillis, millis);
+            if (bucket < openMillis) {
+                // Older than the candle in progress; that candle is already closed.
+                return;
+            }
+            if (bucket != openMillis) {
+                if (ticks > 0) {
+                    completed[completedCount % completed.length] = current();
+                    completedCount++;
+                }
+                openMillis = bucket;
+                open = high = low = close = price;
+                ticks = 0;
+            }
+            high = high.max(price);
+            low = low.min(price);
+            close = price;
+            ticks++;
+        }
+
+        CandleDto current() {
+            return ticks == 0 ? null : new CandleDto(toTime(openMillis), open, high, low, close, ticks);
+        }
+
+        List<CandleDto> recent(int limit) {
+            int kept = Math.min(completedCount, completed.length);
+            int fromCompleted = Math.min(kept, Math.max(0, limit - (ticks > 0 ? 1 : 0)));
+            List<CandleDto> candles = new ArrayList<>(fromCompleted + 1);
+            for (int i = completedCount - fromCompleted; i < completedCount; i++) {
+                candles.add(completed[i % completed.length]);
+            }
+            if (ticks > 0 && limit > 0) {
+                candles.add(current());
+            }
+            return candles;
+        }
+    }
+}
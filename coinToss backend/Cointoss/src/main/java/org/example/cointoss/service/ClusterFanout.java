@@ -0,0 +1,26 @@
+package org.example.cointoss.service;
+
+/**
+ * Delivers WebSocket updates to the subscribers of every node, not just the node that produced them.
+ */
+public interface ClusterFanout {
+
+    /**
+     * Sends a message to this node's subscribers of the destination and relays it to the other
+     * nodes'. Messages carry the latest state, so a later one for the same destination may replace
+     * an earlier one that has not been relayed yet.
+     */
+    void broadcast(String destination, Object payload);
+
+    /**
+     * Tells the other nodes about bets this node committed, in kobo, so the pool totals they
+     * broadcast include them.
+     */
+    void poolBets(Long poolId, long upMinor, long downMinor);
+
+    /**
+     * Tells every node, this one included, that a pool has settled, so each pushes the results to
+     * the bettors connected to it.
+     */
+    void poolSettled(Long poolId);
+}
@@ -0,0 +1,68 @@
+package org.example.cointoss.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.ClusterConfig;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+/**
+ * Time-limited leases in the cluster_leases table, so only one node at a time does a piece of
+ * work and another takes over once the holder stops renewing. Plain UPDATE and INSERT statements,
+ * so it runs on H2 as well as Postgres.
+ *
+ * A lease only hands over work; the price ticks that work may need stay on the node that captured
+ * them. A node that takes over a "pool:{id}" claim can settle the pool only if it holds a tick near
+ * the settlement time or the pool's checkpoint, which is why nodes check that before racing for it.
+ */
+@Service
+@Slf4j
+public class ClusterLeases {
+    private static final String RENEW_SQL =
+            "UPDATE cluster_leases SET owner = ?, expires_at = ? WHERE name = ? AND (owner = ? OR expires_at < ?)";
+    private static final String INSERT_SQL = "INSERT INTO cluster_leases (name, owner, expires_at) VALUES (?, ?, ?)";
+    private static final String RELEASE_SQL = "DELETE FROM cluster_leases WHERE name = ? AND owner = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId;
+
+    public ClusterLeases(ClusterConfig config, JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nodeId = config.getNodeId().isBlank() ? UUID.randomUUID().toString() : config.getNodeId();
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Takes the lease, or extends it if this node already holds it. Returns false while another
+     * node holds it unexpired.
+     */
+    public boolean tryAcquire(String name, long leaseMs) {
+        long now = System.currentTimeMillis();
+        if (jdbcTemplate.update(RENEW_SQL, nodeId, now + leaseMs, name, nodeId, now) == 1) {
+            return true;
+        }
+        try {
+            return jdbcTemplate.update(INSERT_SQL, name, nodeId, now + leaseMs) == 1;
+        } catch (DuplicateKeyException ex) {
+            // Held by another node.
+            return false;
+        }
+    }
+
+    /**
+     * Gives the lease up early if this node holds it, so another node can take it straight away.
+     */
+    public void release(String name) {
+        try {
+            jdbcTemplate.update(RELEASE_SQL, name, nodeId);
+        } catch (RuntimeException ex) {
+            // It expires on its own.
+            log.warn("Failed to release lease {}: {}", name, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The success and failure timers of one gateway operation, registered up front so that timing a
+ * call allocates nothing.
+ */
+class GatewayTimers {
+    private final Timer success;
+    private final Timer failure;
+
+    GatewayTimers(MeterRegistry meterRegistry, String gateway, String operation) {
+        this.success = timer(meterRegistry, gateway, operation, "success");
+        this.failure = timer(meterRegistry, gateway, operation, "failure");
+    }
+
+    void record(long startNanos, boolean succeeded) {
+        (succeeded ? success : failure).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String gateway, String operation, String outcome) {
+        return Timer.builder("cointoss.gateway.calls")
+                .description("Calls to payment and exchange gateways")
+                .publishPercentileHistogram()
+                .tag("gateway", gateway)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
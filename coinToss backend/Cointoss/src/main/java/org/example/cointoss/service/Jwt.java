@@ -1,20 +1,19 @@
 package org.example.cointoss.service;
 
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
 import org.example.cointoss.entities.Role;
 
-import javax.crypto.SecretKey;
 import java.util.Date;
 
 public class Jwt {
 
     private final Claims claims;
-    private final SecretKey secretKey;
+    // The signed token, kept so it is never signed again.
+    private final String compact;
 
-    public Jwt(Claims claims, SecretKey secretKey) {
+    public Jwt(Claims claims, String compact) {
         this.claims = claims;
-        this.secretKey = secretKey;
+        this.compact = compact;
     }
 
     public Boolean isExpired(){
@@ -30,6 +29,6 @@ public class Jwt {
     }
 
     public String toString(){
-       return Jwts.builder().claims(claims).signWith(secretKey).compact();
+       return compact;
     }
 }
@@ -2,18 +2,66 @@ package org.example.cointoss.service;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import lombok.AllArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.example.cointoss.config.JwtConfig;
 import org.example.cointoss.entities.User;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-@AllArgsConstructor
+/**
+ * Issues and verifies the JWTs the API and the WebSocket endpoint authenticate with.
+ *
+ * Verified tokens are cached by their SHA-256 digest until they expire, so a client sending the
+ * same access token on every request pays for the signature check and claims parsing once. Only
+ * the exact token that was verified can hit, and the cache holds at most cacheSize tokens; once
+ * full, caching another evicts the least recently used, and an expired one goes when it is next
+ * looked up.
+ * Publishes cointoss.jwt.cache.hits, .misses and .size.
+ */
 @Service
 public class JwtService {
     private final JwtConfig jwtConfig;
+    private final SecretKey secretKey;
+    // Thread-safe once built, so one serves every request.
+    private final JwtParser parser;
+    // In access order, so the eldest entry is the least recently used; every access must lock it.
+    private final Map<String, Jwt> verified;
+    private final Counter hits;
+    private final Counter misses;
+
+    public JwtService(JwtConfig jwtConfig, MeterRegistry meterRegistry) {
+        this.jwtConfig = jwtConfig;
+        this.secretKey = jwtConfig.getSecretKey();
+        this.parser = Jwts.parser().verifyWith(secretKey).build();
+        this.verified = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Jwt> eldest) {
+                return size() > jwtConfig.getCacheSize();
+            }
+        });
+        this.hits = Counter.builder("cointoss.jwt.cache.hits")
+                .description("Tokens served from the verified-token cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("cointoss.jwt.cache.misses")
+                .description("Tokens that had to be verified")
+                .register(meterRegistry);
+        Gauge.builder("cointoss.jwt.cache.size", verified, Map::size)
+                .description("Verified tokens cached")
+                .register(meterRegistry);
+    }
 
     public Jwt generateAccessToken(User user) {
         return generateToken(user, jwtConfig.getAccessTokenExpiration());
@@ -32,25 +80,49 @@ public class JwtService {
                 .issuedAt(new Date())
                 .expiration(new Date(System.currentTimeMillis() + 1000 * tokenExpiration))
                 .build();
-        return new Jwt(claims, jwtConfig.getSecretKey());
+        return new Jwt(claims, Jwts.builder().claims(claims).signWith(secretKey).compact());
     }
 
     public Jwt parseToken(String token){
+        if (jwtConfig.getCacheSize() <= 0) {
+            return verify(token);
+        }
+        String digest = digest(token);
+        Jwt jwt = verified.get(digest);
+        if (jwt != null) {
+            if (!jwt.isExpired()) {
+                hits.increment();
+                return jwt;
+            }
+            verified.remove(digest, jwt);
+        }
+        misses.increment();
+        jwt = verify(token);
+        if (jwt != null && !jwt.isExpired()) {
+            verified.put(digest, jwt);
+        }
+        return jwt;
+    }
+
+    private Jwt verify(String token) {
         try{
             var claims = getClaims(token);
-            return new Jwt(claims, jwtConfig.getSecretKey());
+            return new Jwt(claims, token);
         } catch (JwtException e){
             return null;
         }
     }
 
     private Claims getClaims(String token) {
-        return
-                Jwts.parser()
-                .verifyWith(jwtConfig.getSecretKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
     }
-}
 
+    private static String digest(String token) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM ships SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
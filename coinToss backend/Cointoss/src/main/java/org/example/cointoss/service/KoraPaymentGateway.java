@@ -1,7 +1,9 @@
 package org.example.cointoss.service;
 
 import com.google.gson.Gson;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.example.cointoss.dtos.*;
 import org.example.cointoss.entities.Transaction;
 import org.example.cointoss.entities.TransactionStatus;
@@ -19,11 +21,12 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class KoraPaymentGateway implements PaymentGateway {
     private final TransactionRepository transactionRepository;
     private final WalletRepository walletRepository;
+    private final Counter feeDebitFailures;
 
     @Value("${kora.secretKey}")
     private String secretKey;
@@ -31,6 +34,14 @@ public class KoraPaymentGateway implements PaymentGateway {
     @Value("${kora.baseUrl}")
     private String baseUrl;
 
+    public KoraPaymentGateway(TransactionRepository transactionRepository, WalletRepository walletRepository,
+                              MeterRegistry meterRegistry) {
+        this.transactionRepository = transactionRepository;
+        this.walletRepository = walletRepository;
+        this.feeDebitFailures = Counter.builder("cointoss.payments.fee_debit.failures")
+                .description("Successful payouts whose fee could not be taken from the wallet")
+                .register(meterRegistry);
+    }
 
     @Override
     public VerifyBankAccountResponse verifyBankAccount(VerifyBankAccountRequest request) {
@@ -188,12 +199,9 @@ public class KoraPaymentGateway implements PaymentGateway {
             throw new TransactionNotFoundException();
         }
 
-        var wallet = walletRepository.findById(transaction.getWallet().getId())
-                .orElse(null);
-
-        if (wallet == null) {
-            throw new WalletNotFoundException();
-        }
+        // Balances are changed with single UPDATE statements, so the wallet row is never
+        // read and written back here.
+        Long userId = transaction.getWallet().getUser().getId();
 
         // ✅ Accept if webhook amount >= transaction amount
         if (transaction.getAmount() == null || webhookAmount == null) {
@@ -210,20 +218,31 @@ public class KoraPaymentGateway implements PaymentGateway {
 
         // Update status based on event
         if ("transfer.success".equals(webhookEvent.getEvent())) {
-            var totalAmount = webhookAmount.add(webhookFee);
-            wallet.withdraw(totalAmount); // get amount + transaction fee
-            transaction.setTransactionStatus(TransactionStatus.SUCCESS);
+            // The amount itself was taken when the withdrawal was made; only the fee is still owed.
+            if (webhookFee != null && webhookFee.signum() > 0 && walletRepository.debit(userId, webhookFee) == 0) {
+                log.error("Could not debit fee {} for transfer {} from user {}", webhookFee, reference, userId);
+                feeDebitFailures.increment();
+                transaction.setTransactionStatus(TransactionStatus.NEEDS_REVIEW);
+            } else {
+                transaction.setTransactionStatus(TransactionStatus.SUCCESS);
+            }
         }
         else if ("charge.success".equals(webhookEvent.getEvent())) {
-            wallet.deposit(transaction.getAmount());
+            if (walletRepository.credit(userId, transaction.getAmount()) == 0) {
+                throw new WalletNotFoundException();
+            }
             transaction.setTransactionStatus(TransactionStatus.SUCCESS);
         }
         else if ("transfer.failed".equals(webhookEvent.getEvent()) || "charge.failed".equals(webhookEvent.getEvent())) {
+            // A withdrawal was debited up front, so a failed payout that is still pending gets it back.
+            if ("transfer.failed".equals(webhookEvent.getEvent())
+                    && transaction.getTransactionStatus() == TransactionStatus.PENDING) {
+                walletRepository.credit(userId, transaction.getAmount());
+            }
             transaction.setTransactionStatus(TransactionStatus.FAILED);
         }
         else {
             System.out.println("⚠️ Unhandled Korapay event: " + webhookEvent.getEvent());
         }
-        walletRepository.save(wallet);
         transactionRepository.save(transaction);
     }}
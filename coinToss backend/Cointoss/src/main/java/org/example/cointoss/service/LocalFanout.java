@@ -0,0 +1,32 @@
+package org.example.cointoss.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Single-node fan-out: updates go straight to this node's broker and nothing is relayed.
+ */
+@Service
+@ConditionalOnProperty(name = "cointoss.fanout.mode", havingValue = "local", matchIfMissing = true)
+@RequiredArgsConstructor
+public class LocalFanout implements ClusterFanout {
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SettlementResults settlementResults;
+
+    @Override
+    public void broadcast(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+    }
+
+    @Override
+    public void poolBets(Long poolId, long upMinor, long downMinor) {
+        // No other node keeps totals.
+    }
+
+    @Override
+    public void poolSettled(Long poolId) {
+        settlementResults.push(poolId);
+    }
+}
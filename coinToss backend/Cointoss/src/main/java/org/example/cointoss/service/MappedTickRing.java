@@ -0,0 +1,207 @@
+package org.example.cointoss.service;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The ticks of one asset pair in a fixed-size ring of records in a memory-mapped file.
+ *
+ * Each record is four longs: capture time in epoch millis, then bid, ask and last price in units of
+ * 10^-8. Appending writes straight into the mapping, so it allocates nothing, and reopening the file
+ * after a restart maps it back in without reading it. Once the ring is full the oldest tick is
+ * overwritten.
+ *
+ * One writer at a time (appends are synchronized); any number of readers, which never lock. Ticks
+ * are kept in time order, so lookups are binary searches. A reader that raced with the writer
+ * overwriting what it read simply retries.
+ */
+public class MappedTickRing implements AutoCloseable {
+    public static final int PRICE_SCALE = 8;
+    // Stored for a missing bid or ask.
+    public static final long NO_PRICE = Long.MIN_VALUE;
+
+    private static final long MAGIC = 0x434f494e5449434bL; // "COINTICK"
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_BYTES = 32;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long capacity;
+
+    private MappedTickRing(FileChannel channel, MappedByteBuffer buffer, long capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Maps the ring file, creating it with the given capacity if it does not exist. An existing
+     * file keeps the capacity it was created with.
+     */
+    public static MappedTickRing open(Path file, int capacity) throws IOException {
+        if (capacity < 2 || HEADER_BYTES + (long) capacity * RECORD_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A tick ring holds between 2 and about 67 million ticks");
+        }
+        boolean exists = Files.exists(file) && Files.size(file) >= HEADER_BYTES;
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long ringCapacity = capacity;
+            if (exists) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+                if ((long) LONGS.get(header, 0) != MAGIC) {
+                    throw new IOException(file + " is not a tick ring file");
+                }
+                ringCapacity = (long) LONGS.get(header, CAPACITY_OFFSET);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + ringCapacity * RECORD_BYTES);
+            if (!exists) {
+                LONGS.set(buffer, CAPACITY_OFFSET, ringCapacity);
+                LONGS.set(buffer, COUNT_OFFSET, 0L);
+                LONGS.setRelease(buffer, 0, MAGIC);
+            }
+            return new MappedTickRing(channel, buffer, ringCapacity);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Appends a tick. Returns false, and stores nothing, if it is older than the newest tick.
+     */
+    public synchronized boolean append(long epochMillis, long bid, long ask, long last) {
+        long count = count();
+        if (count > 0 && epochMillis < timeAt(count - 1)) {
+            return false;
+        }
+        int offset = offset(count);
+        LONGS.set(buffer, offset, epochMillis);
+        LONGS.set(buffer, offset + 8, bid);
+        LONGS.set(buffer, offset + 16, ask);
+        LONGS.set(buffer, offset + 24, last);
+        // Publishes the record to readers.
+        LONGS.setRelease(buffer, COUNT_OFFSET, count + 1);
+        return true;
+    }
+
+    /**
+     * Ticks ever appended, including the ones the ring has since overwritten.
+     */
+    public long count() {
+        return (long) LONGS.getAcquire(buffer, COUNT_OFFSET);
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Index of the tick captured closest to the given time, the earlier one on a tie, or -1 if
+     * the ring is empty. Read the tick with the accessors below, then check {@link #isReadable}.
+     */
+    public long closestIndex(long epochMillis) {
+        while (true) {
+            long count = count();
+            long first = firstReadable(count);
+            if (count == first) {
+                return -1;
+            }
+            long after = lowerBound(first, count, epochMillis);
+            long closest;
+            if (after == count) {
+                closest = count - 1;
+            } else if (after == first) {
+                closest = first;
+            } else {
+                long distanceBefore = epochMillis - timeAt(after - 1);
+                long distanceAfter = timeAt(after) - epochMillis;
+                closest = distanceBefore <= distanceAfter ? after - 1 : after;
+            }
+            if (isReadable(first)) {
+                return closest;
+            }
+        }
+    }
+
+    /**
+     * Index of the first tick captured at or after the given time; {@link #count()} if there is none.
+     */
+    public long firstIndexAtOrAfter(long epochMillis) {
+        while (true) {
+            long count = count();
+            long first = firstReadable(count);
+            long index = lowerBound(first, count, epochMillis);
+            if (isReadable(first)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Whether the tick at this index is still in the ring. Call after reading a tick: if it returns
+     * false the values read may belong to a newer tick and must be discarded.
+     */
+    public boolean isReadable(long index) {
+        VarHandle.acquireFence();
+        return index >= firstReadable(count());
+    }
+
+    public long timeAt(long index) {
+        return (long) LONGS.get(buffer, offset(index));
+    }
+
+    public long bidAt(long index) {
+        return (long) LONGS.get(buffer, offset(index) + 8);
+    }
+
+    public long askAt(long index) {
+        return (long) LONGS.get(buffer, offset(index) + 16);
+    }
+
+    public long lastAt(long index) {
+        return (long) LONGS.get(buffer, offset(index) + 24);
+    }
+
+    /**
+     * Flushes the mapping to disk.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // The slot of the oldest tick is the one the writer fills next, so it is never handed to readers.
+    private long firstReadable(long count) {
+        return Math.max(0, count - capacity + 1);
+    }
+
+    private long lowerBound(long from, long to, long epochMillis) {
+        long low = from;
+        long high = to;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (timeAt(mid) < epochMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int offset(long index) {
+        return (int) (HEADER_BYTES + (index % capacity) * RECORD_BYTES);
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.cointoss.dtos.TickerResponse;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+/**
+ * Times every price lookup on the Quidax gateway as cointoss.gateway.calls; a lookup that throws,
+ * e.g. because the market has no recent price, counts as a failure. Injected wherever a
+ * {@link CryptoPaymentGateway} is asked for.
+ */
+@Service
+@Primary
+public class MeteredCryptoPaymentGateway implements CryptoPaymentGateway {
+    private final QuidaxPaymentGateway delegate;
+    private final GatewayTimers getBuyPrice;
+
+    public MeteredCryptoPaymentGateway(QuidaxPaymentGateway delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.getBuyPrice = new GatewayTimers(meterRegistry, "quidax", "get_buy_price");
+    }
+
+    @Override
+    public TickerResponse getBuyPrice(String marketPair) {
+        long startNanos = System.nanoTime();
+        boolean priced = false;
+        try {
+            TickerResponse response = delegate.getBuyPrice(marketPair);
+            priced = true;
+            return response;
+        } finally {
+            getBuyPrice.record(startNanos, priced);
+        }
+    }
+}
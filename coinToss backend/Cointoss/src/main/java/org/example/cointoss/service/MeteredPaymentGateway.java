@@ -0,0 +1,91 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.cointoss.dtos.*;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+/**
+ * Times every call to the Korapay gateway as cointoss.gateway.calls, tagged by operation and
+ * outcome. Korapay calls that fail return null rather than throw, so a null response counts as a
+ * failure too. Injected wherever a {@link PaymentGateway} is asked for.
+ */
+@Service
+@Primary
+public class MeteredPaymentGateway implements PaymentGateway {
+    private final KoraPaymentGateway delegate;
+    private final GatewayTimers verifyBankAccount;
+    private final GatewayTimers createCheckout;
+    private final GatewayTimers initiatePayout;
+    private final GatewayTimers verifyPayout;
+    private final GatewayTimers handleWebhook;
+
+    public MeteredPaymentGateway(KoraPaymentGateway delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.verifyBankAccount = new GatewayTimers(meterRegistry, "korapay", "verify_bank_account");
+        this.createCheckout = new GatewayTimers(meterRegistry, "korapay", "create_checkout");
+        this.initiatePayout = new GatewayTimers(meterRegistry, "korapay", "initiate_payout");
+        this.verifyPayout = new GatewayTimers(meterRegistry, "korapay", "verify_payout");
+        this.handleWebhook = new GatewayTimers(meterRegistry, "korapay", "handle_webhook");
+    }
+
+    @Override
+    public VerifyBankAccountResponse verifyBankAccount(VerifyBankAccountRequest request) {
+        long startNanos = System.nanoTime();
+        VerifyBankAccountResponse response = null;
+        try {
+            response = delegate.verifyBankAccount(request);
+            return response;
+        } finally {
+            verifyBankAccount.record(startNanos, response != null);
+        }
+    }
+
+    @Override
+    public CheckoutResponse createCheckout(FundWalletRequest request) {
+        long startNanos = System.nanoTime();
+        CheckoutResponse response = null;
+        try {
+            response = delegate.createCheckout(request);
+            return response;
+        } finally {
+            createCheckout.record(startNanos, response != null);
+        }
+    }
+
+    @Override
+    public InitiatePayoutResponse initiatePayout(WithdrawFundRequest withdrawFundRequest) {
+        long startNanos = System.nanoTime();
+        InitiatePayoutResponse response = null;
+        try {
+            response = delegate.initiatePayout(withdrawFundRequest);
+            return response;
+        } finally {
+            initiatePayout.record(startNanos, response != null);
+        }
+    }
+
+    @Override
+    public VerifyPayoutResponse verifyPayout(String transactionRef) {
+        long startNanos = System.nanoTime();
+        VerifyPayoutResponse response = null;
+        try {
+            response = delegate.verifyPayout(transactionRef);
+            return response;
+        } finally {
+            verifyPayout.record(startNanos, response != null);
+        }
+    }
+
+    @Override
+    public void handleWebhook(KorapayWebhookEvent webhookEvent) {
+        long startNanos = System.nanoTime();
+        boolean handled = false;
+        try {
+            delegate.handleWebhook(webhookEvent);
+            handled = true;
+        } finally {
+            handleWebhook.record(startNanos, handled);
+        }
+    }
+}
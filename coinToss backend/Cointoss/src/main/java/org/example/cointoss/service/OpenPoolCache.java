@@ -0,0 +1,58 @@
+package org.example.cointoss.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers "is this pool taking bets?" without touching the database on the hot path.
+ *
+ * A pool's betting window never changes once it is created, so the status and lock time are read
+ * once per pool and instance. A pool stops taking bets at its lock time even if the scheduler has
+ * not marked it LOCKED yet, which also means the cache needs no invalidation.
+ */
+@Service
+@RequiredArgsConstructor
+public class OpenPoolCache {
+    private static final String POOL_WINDOW_SQL = "SELECT status, lock_time FROM betting_pools WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Long, PoolWindow> pools = new ConcurrentHashMap<>();
+
+    public boolean isOpen(Long poolId) {
+        PoolWindow window = pools.get(poolId);
+        if (window == null) {
+            window = load(poolId);
+            if (window == null) {
+                // Unknown ids are not cached, so made-up pool ids can't fill up memory.
+                return false;
+            }
+            pools.putIfAbsent(poolId, window);
+        }
+        return window.open() && (window.lockTime() == null || OffsetDateTime.now().isBefore(window.lockTime()));
+    }
+
+    /**
+     * Drops a settled pool from memory.
+     */
+    public void evict(Long poolId) {
+        pools.remove(poolId);
+    }
+
+    private PoolWindow load(Long poolId) {
+        List<PoolWindow> windows = jdbcTemplate.query(POOL_WINDOW_SQL,
+                (rs, rowNum) -> new PoolWindow(
+                        "OPEN".equals(rs.getString("status")),
+                        rs.getObject("lock_time", OffsetDateTime.class)),
+                poolId);
+        return windows.isEmpty() ? null : windows.get(0);
+    }
+
+    private record PoolWindow(boolean open, OffsetDateTime lockTime) {}
+}
@@ -0,0 +1,116 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.example.cointoss.config.PasswordConfig;
+import org.example.cointoss.exceptions.PasswordHashingBusyException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Hashes and checks passwords on a small bounded pool of threads of its own, so a burst of
+ * sign-ins, such as a credential-stuffing run, queues behind a fixed share of the CPU instead of
+ * taking it from bet placement. Work beyond the queue is turned away with
+ * {@link PasswordHashingBusyException}, which callers answer with a 503.
+ */
+@Component
+public class PasswordHasher {
+    // "$2a$10$...": the two digits after the version are the cost.
+    private static final Pattern BCRYPT_COST = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$");
+
+    private final PasswordConfig config;
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final Counter shed;
+    // Checked against when there is no user, so an unknown email takes as long as a wrong password.
+    private final String unknownUserHash;
+
+    public PasswordHasher(PasswordConfig config, PasswordEncoder passwordEncoder, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.passwordEncoder = passwordEncoder;
+        this.unknownUserHash = passwordEncoder.encode("no user has this password");
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                config.getHashingThreads(), config.getHashingThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("cointoss.passwords.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Password hashes waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("cointoss.passwords.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashes being computed right now")
+                .register(meterRegistry);
+        this.shed = Counter.builder("cointoss.passwords.shed")
+                .description("Password hashes turned away because the queue was full")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    public String encode(CharSequence rawPassword) {
+        return run(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * Spends as long as checking a real password, for a sign-in with an email nobody has.
+     */
+    public void matchNobody(CharSequence rawPassword) {
+        run(() -> passwordEncoder.matches(rawPassword, unknownUserHash));
+    }
+
+    /**
+     * Whether a stored hash was made with another work factor than the configured one.
+     */
+    public boolean needsRehash(String encodedPassword) {
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword == null ? "" : encodedPassword);
+        return !matcher.find() || Integer.parseInt(matcher.group(1)) != config.getBcryptStrength();
+    }
+
+    private <T> T run(Callable<T> hashing) {
+        Future<T> result;
+        try {
+            result = executor.submit(hashing);
+        } catch (RejectedExecutionException ex) {
+            shed.increment();
+            throw new PasswordHashingBusyException();
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException ex) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingBusyException();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+}
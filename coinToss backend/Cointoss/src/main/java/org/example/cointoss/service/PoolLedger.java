@@ -0,0 +1,219 @@
+package org.example.cointoss.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.entities.BettingPools;
+import org.example.cointoss.repositories.BettingPoolsRepository;
+import org.example.cointoss.utilities.MoneyUtil;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the live UP/DOWN totals of every pool that is taking bets.
+ *
+ * Bets only add to striped LongAdder counters (in kobo), so concurrent bets on the same pool
+ * never contend on the betting_pools row. The accumulated deltas are written back by
+ * {@link #flush()} on a fixed delay, and {@link #close(Long)} reconciles the row from the
+ * bets table when the pool locks. Closed pools are kept for reads until they are settled.
+ *
+ * Deltas are only written while the row is still OPEN. A node that lost the race to lock a pool
+ * never calls close, so its first flush after the lock finds the pool locked and stops flushing
+ * it; the reconcile already counted its bets.
+ *
+ * Only pools that are OPEN when first seen are kept, and bets arriving for a closed or evicted
+ * pool are dropped rather than bringing it back, so a late relayed bet cannot leave a settled
+ * pool in memory for good.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PoolLedger {
+    private final BettingPoolsRepository bettingPoolsRepository;
+
+    private final Map<Long, PoolTotals> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a committed bet to the pool's running totals.
+     */
+    public void record(Long poolId, String direction, long amountMinor) {
+        PoolTotals totals = live(poolId);
+        if (totals == null) {
+            return;
+        }
+        if ("UP".equals(direction)) {
+            totals.up.add(amountMinor);
+        } else {
+            totals.down.add(amountMinor);
+        }
+    }
+
+    /**
+     * Adds bets another node committed, as relayed by the {@link ClusterFanout}. They count in the
+     * totals this node broadcasts but are never flushed from here, since their own node flushes them.
+     */
+    public void recordRemote(Long poolId, long upMinor, long downMinor) {
+        PoolTotals totals = live(poolId);
+        if (totals == null) {
+            return;
+        }
+        totals.remoteUp.add(upMinor);
+        totals.remoteDown.add(downMinor);
+    }
+
+    /**
+     * Returns the live totals for a pool, seeding them from the betting_pools row the first
+     * time the pool is seen on this instance. A pool that is no longer open is read from its row
+     * every time instead of being kept.
+     */
+    public PoolTotals totals(Long poolId) {
+        PoolTotals totals = pools.get(poolId);
+        if (totals != null) {
+            return totals;
+        }
+        BettingPools pool = bettingPoolsRepository.findById(poolId)
+                .orElseThrow(() -> new IllegalArgumentException("Betting pool not found"));
+        PoolTotals seeded = seed(pool);
+        if (!"OPEN".equals(pool.getStatus())) {
+            seeded.closed = true;
+            return seeded;
+        }
+        // Loaded outside the map, so a slow read never blocks other pools' bets; the first seed wins.
+        PoolTotals existing = pools.putIfAbsent(poolId, seeded);
+        return existing != null ? existing : seeded;
+    }
+
+    /**
+     * The live totals of a pool already in memory, without seeding an unknown one.
+     */
+    public Optional<PoolTotals> find(Long poolId) {
+        return Optional.ofNullable(pools.get(poolId));
+    }
+
+    /**
+     * Writes every pool's unflushed deltas to betting_pools.
+     */
+    @Scheduled(fixedDelayString = "${cointoss.ledger.flush-interval-ms:1000}")
+    public void flush() {
+        pools.forEach((poolId, totals) -> {
+            try {
+                flush(poolId, totals);
+            } catch (RuntimeException ex) {
+                // Deltas stay pending and are retried on the next flush.
+                log.warn("Failed to flush totals for pool {}: {}", poolId, ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Called when a pool locks: flushes what is pending, then rebuilds the row's totals
+     * from the bets table. The pool's totals are no longer flushed after this.
+     */
+    public void close(Long poolId) {
+        PoolTotals totals = pools.get(poolId);
+        if (totals != null) {
+            synchronized (totals) {
+                flush(poolId, totals);
+                totals.closed = true;
+            }
+        }
+        bettingPoolsRepository.reconcileTotals(poolId);
+    }
+
+    /**
+     * Rebuilds the other nodes' share of every pool's totals from betting_pools, for when bets they
+     * relayed may have been lost. The row only has what each node has flushed, so the share can be
+     * up to a flush interval behind until their next relayed bets.
+     */
+    public void resyncRemote() {
+        for (BettingPools pool : bettingPoolsRepository.findAllById(pools.keySet())) {
+            PoolTotals totals = pools.get(pool.getId());
+            if (totals == null) {
+                continue;
+            }
+            synchronized (totals) {
+                // A reconciled row counts every bet, this node's unflushed ones included.
+                long localUp = totals.closed ? totals.up.sum() : totals.flushedUp;
+                long localDown = totals.closed ? totals.down.sum() : totals.flushedDown;
+                reset(totals.remoteUp, MoneyUtil.toMinor(pool.getTotalUpPool()) - totals.baseUp - localUp);
+                reset(totals.remoteDown, MoneyUtil.toMinor(pool.getTotalDownPool()) - totals.baseDown - localDown);
+            }
+        }
+    }
+
+    /**
+     * Drops a settled pool from memory.
+     */
+    public void evict(Long poolId) {
+        pools.remove(poolId);
+    }
+
+    // The totals bets may still be added to, or null once the pool has closed or been evicted.
+    private PoolTotals live(Long poolId) {
+        PoolTotals totals = totals(poolId);
+        return totals.closed ? null : totals;
+    }
+
+    private static PoolTotals seed(BettingPools pool) {
+        return new PoolTotals(MoneyUtil.toMinor(pool.getTotalUpPool()), MoneyUtil.toMinor(pool.getTotalDownPool()));
+    }
+
+    private void flush(Long poolId, PoolTotals totals) {
+        synchronized (totals) {
+            if (!totals.closed) {
+                flushDeltas(poolId, totals);
+            }
+        }
+    }
+
+    private void flushDeltas(Long poolId, PoolTotals totals) {
+        long upDelta = totals.up.sum() - totals.flushedUp;
+        long downDelta = totals.down.sum() - totals.flushedDown;
+        if (upDelta == 0 && downDelta == 0) {
+            return;
+        }
+        if (bettingPoolsRepository.addToTotals(poolId, MoneyUtil.fromMinor(upDelta), MoneyUtil.fromMinor(downDelta)) == 0) {
+            // Locked, here or on another node, and reconciled from the bets.
+            totals.closed = true;
+            return;
+        }
+        totals.flushedUp += upDelta;
+        totals.flushedDown += downDelta;
+    }
+
+    private static void reset(LongAdder adder, long value) {
+        adder.reset();
+        adder.add(Math.max(0, value));
+    }
+
+    public static class PoolTotals {
+        private final long baseUp;
+        private final long baseDown;
+        private final LongAdder up = new LongAdder();
+        private final LongAdder down = new LongAdder();
+        private final LongAdder remoteUp = new LongAdder();
+        private final LongAdder remoteDown = new LongAdder();
+        // Guarded by the PoolTotals monitor.
+        private long flushedUp;
+        private long flushedDown;
+        // Set under the monitor; read without it by record, which then drops the bet.
+        private volatile boolean closed;
+
+        PoolTotals(long baseUp, long baseDown) {
+            this.baseUp = baseUp;
+            this.baseDown = baseDown;
+        }
+
+        public long upMinor() {
+            return baseUp + up.sum() + remoteUp.sum();
+        }
+
+        public long downMinor() {
+            return baseDown + down.sum() + remoteDown.sum();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.BroadcastConfig;
+import org.example.cointoss.dtos.PoolUpdateDto;
+import org.example.cointoss.utilities.MoneyUtil;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends pool totals to /topic/pool/{id}, conflated: a change only marks the pool, and every
+ * interval each marked pool is sent once with its latest totals from the {@link PoolLedger}. A hot
+ * pool costs its subscribers one message per interval however many bets it takes.
+ *
+ * Every update carries what was added since the one before and a per-pool sequence number, and
+ * {@link #snapshot(Long)} serves the state as of the last update, so a client that subscribes late
+ * or reconnects picks up from memory instead of polling the database.
+ */
+@Service
+@Slf4j
+public class PoolUpdateBroadcaster {
+    private final BroadcastConfig config;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PoolLedger poolLedger;
+    private final OpenPoolCache openPoolCache;
+    private final Counter sent;
+    private final Counter coalesced;
+    private final Timer broadcastTimer;
+
+    private final Map<Long, PoolChannel> pools = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    public PoolUpdateBroadcaster(BroadcastConfig config,
+                                 SimpMessagingTemplate messagingTemplate,
+                                 PoolLedger poolLedger,
+                                 OpenPoolCache openPoolCache,
+                                 MeterRegistry meterRegistry) {
+        this.config = config;
+        this.messagingTemplate = messagingTemplate;
+        this.poolLedger = poolLedger;
+        this.openPoolCache = openPoolCache;
+        this.sent = Counter.builder("cointoss.broadcast.pool.sent")
+                .description("Pool updates sent to subscribers")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("cointoss.broadcast.pool.coalesced")
+                .description("Pool changes merged into an update that was already waiting to be sent")
+                .register(meterRegistry);
+        this.broadcastTimer = Timer.builder("cointoss.websocket.broadcast")
+                .description("Time to hand a message to the broker for every subscriber")
+                .publishPercentileHistogram()
+                .tag("topic", "pool")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        // Its own thread, so the interval holds however long other scheduled jobs run.
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pool-broadcast");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, config.getPoolIntervalMs(), config.getPoolIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+    }
+
+    /**
+     * Marks a pool's totals as changed; they are sent with the next flush. Ignored for a pool that
+     * has no channel here and is no longer taking bets, so a change that arrives late, e.g. relayed
+     * from another node, cannot bring back the channel of a pool that was evicted.
+     */
+    public void broadcastPoolUpdate(Long poolId) {
+        PoolChannel channel = pools.get(poolId);
+        if (channel == null) {
+            if (!openPoolCache.isOpen(poolId)) {
+                return;
+            }
+            channel = pools.computeIfAbsent(poolId, id -> new PoolChannel());
+        }
+        if (!channel.dirty.compareAndSet(false, true)) {
+            coalesced.increment();
+        }
+    }
+
+    /**
+     * Sends a pool's totals straight away, e.g. the final ones when it locks.
+     */
+    public void flush(Long poolId) {
+        PoolChannel channel = pools.computeIfAbsent(poolId, id -> new PoolChannel());
+        channel.dirty.set(false);
+        send(poolId, channel);
+    }
+
+    /**
+     * A pool's totals as of its last update, with that update's sequence number. Totals that changed
+     * since are sent to the topic first, so the snapshot is never behind what subscribers have seen
+     * and the next update follows on from it. Empty for a pool this node does not hold in memory
+     * and that is no longer taking bets.
+     */
+    public Optional<PoolUpdateDto> snapshot(Long poolId) {
+        PoolChannel channel = pools.get(poolId);
+        if (channel == null) {
+            if (poolLedger.find(poolId).isEmpty() && !openPoolCache.isOpen(poolId)) {
+                return Optional.empty();
+            }
+            channel = pools.computeIfAbsent(poolId, id -> new PoolChannel());
+        }
+        synchronized (channel) {
+            PoolLedger.PoolTotals totals = poolLedger.totals(poolId);
+            if (totals.upMinor() != channel.sentUp || totals.downMinor() != channel.sentDown) {
+                channel.dirty.set(false);
+                send(poolId, channel);
+            }
+            return Optional.of(new PoolUpdateDto(
+                    poolId,
+                    MoneyUtil.fromMinor(channel.sentUp),
+                    MoneyUtil.fromMinor(channel.sentDown),
+                    MoneyUtil.fromMinor(0),
+                    MoneyUtil.fromMinor(0),
+                    channel.sequence
+            ));
+        }
+    }
+
+    /**
+     * Drops a settled pool.
+     */
+    public void evict(Long poolId) {
+        pools.remove(poolId);
+    }
+
+    void flush() {
+        pools.forEach((poolId, channel) -> {
+            if (channel.dirty.getAndSet(false)) {
+                try {
+                    send(poolId, channel);
+                } catch (RuntimeException ex) {
+                    log.warn("Failed to broadcast pool {}: {}", poolId, ex.getMessage());
+                }
+            }
+        });
+    }
+
+    private void send(Long poolId, PoolChannel channel) {
+        // Sequence numbers go out in the order they are taken.
+        synchronized (channel) {
+            PoolLedger.PoolTotals totals = poolLedger.totals(poolId);
+            long up = totals.upMinor();
+            long down = totals.downMinor();
+            PoolUpdateDto updateDto = new PoolUpdateDto(
+                    poolId,
+                    MoneyUtil.fromMinor(up),
+                    MoneyUtil.fromMinor(down),
+                    MoneyUtil.fromMinor(up - channel.sentUp),
+                    MoneyUtil.fromMinor(down - channel.sentDown),
+                    ++channel.sequence
+            );
+            channel.sentUp = up;
+            channel.sentDown = down;
+            // Any client subscribed to this topic will receive the message instantly.
+            long startNanos = System.nanoTime();
+            messagingTemplate.convertAndSend("/topic/pool/" + poolId, updateDto);
+            broadcastTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            sent.increment();
+        }
+    }
+
+    private static class PoolChannel {
+        private final AtomicBoolean dirty = new AtomicBoolean();
+        // Guarded by the channel monitor: the last update sent.
+        private long sequence;
+        private long sentUp;
+        private long sentDown;
+    }
+}
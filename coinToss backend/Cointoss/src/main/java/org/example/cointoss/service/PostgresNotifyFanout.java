@@ -0,0 +1,371 @@
+package org.example.cointoss.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.FanoutConfig;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relays updates between nodes over Postgres NOTIFY, for clusters behind a load balancer.
+ *
+ * Updates go to this node's subscribers straight away and are collected for the other nodes.
+ * Every batch interval the collected updates are sent as few NOTIFY payloads as fit under the
+ * Postgres size limit. Only the latest message per destination is kept, and each pool's bets are
+ * summed. Every node LISTENs on a connection of its own outside the pool. It relays the other
+ * nodes' messages to its local broker, skips its own, and adds their bets to its {@link PoolLedger}
+ * before broadcasting its own totals. A settled pool is relayed by id, and every node pushes its
+ * results to the bettors connected to it.
+ *
+ * Messages sent while a node is reconnecting its listener are lost to it. A destination's next
+ * message carries its latest state again, but relayed bets are increments, so after every
+ * reconnect the node rebuilds the other nodes' share of its pool totals from betting_pools
+ * ({@link PoolLedger#resyncRemote()}).
+ */
+@Service
+@ConditionalOnProperty(name = "cointoss.fanout.mode", havingValue = "postgres")
+@Slf4j
+public class PostgresNotifyFanout implements ClusterFanout {
+    // NOTIFY payloads must stay under 8000 bytes.
+    static final int MAX_PAYLOAD_BYTES = 7900;
+    // Indexes of a payload's arrays: messages, bets and settled pools.
+    private static final int FIELD_MESSAGES = 0;
+    private static final int FIELD_BETS = 1;
+    private static final int FIELD_SETTLED = 2;
+    private static final String[] FIELD_NAMES = {"m", "b", "s"};
+
+    private final FanoutConfig config;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PoolLedger poolLedger;
+    private final PoolUpdateBroadcaster poolUpdateBroadcaster;
+    private final SettlementResults settlementResults;
+    private final ObjectMapper objectMapper;
+    private final String nodeId;
+    private final Counter relayed;
+    private final Counter coalesced;
+    private final Counter received;
+    private final Counter notifyErrors;
+
+    // Guarded by this; swapped out whole on every flush.
+    private Map<String, JsonNode> pendingMessages = new LinkedHashMap<>();
+    private Map<Long, long[]> pendingBets = new LinkedHashMap<>();
+    private Set<Long> pendingSettled = new LinkedHashSet<>();
+
+    private ScheduledExecutorService flusher;
+    private volatile Thread listener;
+    private volatile boolean running;
+
+    public PostgresNotifyFanout(FanoutConfig config,
+                                JdbcTemplate jdbcTemplate,
+                                DataSourceProperties dataSourceProperties,
+                                SimpMessagingTemplate messagingTemplate,
+                                PoolLedger poolLedger,
+                                PoolUpdateBroadcaster poolUpdateBroadcaster,
+                                SettlementResults settlementResults,
+                                ObjectMapper objectMapper,
+                                ClusterLeases clusterLeases,
+                                MeterRegistry meterRegistry) {
+        this.config = config;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.messagingTemplate = messagingTemplate;
+        this.poolLedger = poolLedger;
+        this.poolUpdateBroadcaster = poolUpdateBroadcaster;
+        this.settlementResults = settlementResults;
+        this.objectMapper = objectMapper;
+        this.nodeId = clusterLeases.nodeId();
+        this.relayed = Counter.builder("cointoss.fanout.relayed")
+                .description("Updates sent to the other nodes")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("cointoss.fanout.coalesced")
+                .description("Updates replaced by a later one before they were sent to the other nodes")
+                .register(meterRegistry);
+        this.received = Counter.builder("cointoss.fanout.received")
+                .description("Updates received from the other nodes")
+                .register(meterRegistry);
+        this.notifyErrors = Counter.builder("cointoss.fanout.errors")
+                .description("Batches that could not be sent to the other nodes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fanout-notify");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, config.getBatchIntervalMs(), config.getBatchIntervalMs(), TimeUnit.MILLISECONDS);
+        Thread thread = new Thread(this::listen, "fanout-listen");
+        thread.setDaemon(true);
+        listener = thread;
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        flusher.shutdown();
+        flush();
+        listener.interrupt();
+    }
+
+    @Override
+    public void broadcast(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+        JsonNode message = objectMapper.valueToTree(payload);
+        synchronized (this) {
+            if (pendingMessages.put(destination, message) != null) {
+                coalesced.increment();
+            }
+        }
+    }
+
+    @Override
+    public void poolBets(Long poolId, long upMinor, long downMinor) {
+        synchronized (this) {
+            long[] bets = pendingBets.get(poolId);
+            if (bets == null) {
+                pendingBets.put(poolId, new long[] {upMinor, downMinor});
+            } else {
+                bets[0] += upMinor;
+                bets[1] += downMinor;
+                coalesced.increment();
+            }
+        }
+    }
+
+    @Override
+    public void poolSettled(Long poolId) {
+        settlementResults.push(poolId);
+        synchronized (this) {
+            pendingSettled.add(poolId);
+        }
+    }
+
+    void flush() {
+        Map<String, JsonNode> messages;
+        Map<Long, long[]> bets;
+        Set<Long> settled;
+        synchronized (this) {
+            if (pendingMessages.isEmpty() && pendingBets.isEmpty() && pendingSettled.isEmpty()) {
+                return;
+            }
+            messages = pendingMessages;
+            bets = pendingBets;
+            settled = pendingSettled;
+            pendingMessages = new LinkedHashMap<>();
+            pendingBets = new LinkedHashMap<>();
+            pendingSettled = new LinkedHashSet<>();
+        }
+        int updates = messages.size() + bets.size() + settled.size();
+        try {
+            for (String payload : encode(objectMapper, nodeId, messages, bets, settled, MAX_PAYLOAD_BYTES)) {
+                jdbcTemplate.query("SELECT pg_notify(?, ?)", (RowCallbackHandler) rs -> { }, config.getChannel(), payload);
+            }
+            relayed.increment(updates);
+        } catch (RuntimeException ex) {
+            notifyErrors.increment();
+            log.warn("Failed to relay {} updates to the other nodes: {}", updates, ex.getMessage());
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + config.getChannel());
+                }
+                // Bets relayed while the listener was down are lost, so the other nodes' share is
+                // rebuilt; on this thread, the only one that records relayed bets.
+                poolLedger.resyncRemote();
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(config.getListenTimeoutMs());
+                    if (notifications != null && notifications.length > 0) {
+                        relayLocally(notifications);
+                    }
+                }
+            } catch (SQLException | RuntimeException ex) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Fan-out listener lost its connection, reconnecting: {}", ex.getMessage());
+                try {
+                    Thread.sleep(config.getReconnectDelayMs());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void relayLocally(PGNotification[] notifications) {
+        // Several notifications may have arrived at once; only the latest message per destination is delivered.
+        Map<String, JsonNode> messages = new LinkedHashMap<>();
+        Map<Long, long[]> bets = new LinkedHashMap<>();
+        Set<Long> settled = new LinkedHashSet<>();
+        for (PGNotification notification : notifications) {
+            try {
+                decode(objectMapper, nodeId, notification.getParameter(), messages, bets, settled);
+            } catch (JsonProcessingException ex) {
+                log.warn("Ignored a malformed fan-out notification: {}", ex.getMessage());
+            }
+        }
+        received.increment(messages.size() + bets.size() + settled.size());
+        messages.forEach(messagingTemplate::convertAndSend);
+        bets.forEach((poolId, added) -> {
+            poolLedger.recordRemote(poolId, added[0], added[1]);
+            poolUpdateBroadcaster.broadcastPoolUpdate(poolId);
+        });
+        settled.forEach(settlementResults::push);
+    }
+
+    /**
+     * Packs updates into as few payloads as fit in maxBytes each:
+     * {"o": origin, "m": [{"d": destination, "p": payload}], "b": [{"i": poolId, "u": up, "d": down}],
+     * "s": [settled poolId]}. A single message too big for a payload of its own is dropped. Each
+     * entry is serialised once and the payload sizes are kept as running byte counts.
+     */
+    static List<String> encode(ObjectMapper objectMapper, String origin, Map<String, JsonNode> messages,
+                               Map<Long, long[]> bets, Set<Long> settled, int maxBytes) {
+        String header = "{\"o\":" + objectMapper.getNodeFactory().textNode(origin);
+        List<String> payloads = new ArrayList<>();
+        Batch batch = new Batch(header);
+        for (Entry entry : entries(objectMapper, messages, bets, settled)) {
+            if (!batch.fits(entry, maxBytes)) {
+                if (!batch.isEmpty()) {
+                    payloads.add(batch.toString());
+                }
+                batch = new Batch(header);
+                if (!batch.fits(entry, maxBytes)) {
+                    log.warn("Dropped an update too big to relay: {} bytes", entry.bytes());
+                    continue;
+                }
+            }
+            batch.add(entry);
+        }
+        if (!batch.isEmpty()) {
+            payloads.add(batch.toString());
+        }
+        return payloads;
+    }
+
+    private static List<Entry> entries(ObjectMapper objectMapper, Map<String, JsonNode> messages,
+                                       Map<Long, long[]> bets, Set<Long> settled) {
+        List<Entry> entries = new ArrayList<>(messages.size() + bets.size() + settled.size());
+        messages.forEach((destination, payload) -> entries.add(Entry.of(FIELD_MESSAGES, objectMapper.createObjectNode()
+                .put("d", destination).set("p", payload))));
+        bets.forEach((poolId, added) -> entries.add(Entry.of(FIELD_BETS, objectMapper.createObjectNode()
+                .put("i", poolId).put("u", added[0]).put("d", added[1]))));
+        settled.forEach(poolId -> entries.add(Entry.of(FIELD_SETTLED, objectMapper.getNodeFactory().numberNode(poolId))));
+        return entries;
+    }
+
+    /**
+     * Merges a payload from another node into the maps and set; false if it came from this node.
+     */
+    static boolean decode(ObjectMapper objectMapper, String self, String payload, Map<String, JsonNode> messages,
+                          Map<Long, long[]> bets, Set<Long> settled) throws JsonProcessingException {
+        JsonNode batch = objectMapper.readTree(payload);
+        if (self.equals(batch.path("o").asText())) {
+            return false;
+        }
+        for (JsonNode message : batch.path("m")) {
+            messages.put(message.path("d").asText(), message.path("p"));
+        }
+        for (JsonNode bet : batch.path("b")) {
+            long[] added = bets.computeIfAbsent(bet.path("i").asLong(), id -> new long[2]);
+            added[0] += bet.path("u").asLong();
+            added[1] += bet.path("d").asLong();
+        }
+        for (JsonNode poolId : batch.path("s")) {
+            settled.add(poolId.asLong());
+        }
+        return true;
+    }
+
+    private record Entry(int field, String json, int bytes) {
+        static Entry of(int field, JsonNode node) {
+            String json = node.toString();
+            return new Entry(field, json, json.getBytes(StandardCharsets.UTF_8).length);
+        }
+    }
+
+    // One payload being filled: {"o":...,"m":[...],"b":[...],"s":[...]}.
+    private static class Batch {
+        private final String header;
+        private final StringBuilder[] arrays = {new StringBuilder(), new StringBuilder(), new StringBuilder()};
+        private int bytes;
+        private int entries;
+
+        Batch(String header) {
+            this.header = header;
+            // The header, plus ',"m":[]' and the like for each array, plus the closing brace.
+            this.bytes = header.getBytes(StandardCharsets.UTF_8).length + FIELD_NAMES.length * 7 + 1;
+        }
+
+        boolean fits(Entry entry, int maxBytes) {
+            return bytes + separator(entry) + entry.bytes() <= maxBytes;
+        }
+
+        void add(Entry entry) {
+            bytes += separator(entry) + entry.bytes();
+            StringBuilder array = arrays[entry.field()];
+            if (!array.isEmpty()) {
+                array.append(',');
+            }
+            array.append(entry.json());
+            entries++;
+        }
+
+        boolean isEmpty() {
+            return entries == 0;
+        }
+
+        private int separator(Entry entry) {
+            return arrays[entry.field()].isEmpty() ? 0 : 1;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder payload = new StringBuilder(bytes).append(header);
+            for (int field = 0; field < FIELD_NAMES.length; field++) {
+                payload.append(",\"").append(FIELD_NAMES[field]).append("\":[").append(arrays[field]).append(']');
+            }
+            return payload.append('}').toString();
+        }
+    }
+}
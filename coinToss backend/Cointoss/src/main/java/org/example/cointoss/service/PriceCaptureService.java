@@ -0,0 +1,78 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.PoolConfig;
+import org.example.cointoss.config.PriceConfig;
+import org.example.cointoss.dtos.TickerResponse;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Records a price tick for every market's pair on a fixed delay, so opening and settling a pool
+ * only reads the {@link PriceTickStore} and never waits on the exchange. Each tick also feeds the
+ * {@link CandleAggregator}.
+ */
+@Service
+@Slf4j
+public class PriceCaptureService {
+    private final Set<String> assetPairs;
+    private final CryptoPaymentGateway priceService;
+    private final PriceTickStore priceTickStore;
+    private final CandleAggregator candleAggregator;
+    private final Counter captureFailures;
+
+    public PriceCaptureService(PriceConfig config,
+                               PoolConfig poolConfig,
+                               CryptoPaymentGateway priceService,
+                               PriceTickStore priceTickStore,
+                               CandleAggregator candleAggregator,
+                               MeterRegistry meterRegistry) {
+        this.assetPairs = capturedPairs(config, poolConfig);
+        this.priceService = priceService;
+        this.priceTickStore = priceTickStore;
+        this.candleAggregator = candleAggregator;
+        this.captureFailures = Counter.builder("cointoss.prices.capture.failures")
+                .description("Price ticks that could not be captured")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${cointoss.prices.capture-interval-ms:1000}")
+    public void captureTicks() {
+        for (String assetPair : assetPairs) {
+            try {
+                TickerResponse ticker = priceService.getBuyPrice(assetPair.replace("/", ""));
+                TickerResponse.TickerData data = ticker == null || ticker.getData() == null
+                        ? null : ticker.getData().getTicker();
+                if (data == null || data.getLastPrice() == null) {
+                    captureFailures.increment();
+                    log.warn("No price returned for {}", assetPair);
+                    continue;
+                }
+                OffsetDateTime now = OffsetDateTime.now();
+                priceTickStore.record(assetPair, data.getBuy(), data.getSell(), data.getLastPrice(), now);
+                candleAggregator.onTick(assetPair, now.toInstant().toEpochMilli(), data.getLastPrice());
+            } catch (RuntimeException ex) {
+                captureFailures.increment();
+                log.warn("Failed to capture a price tick for {}: {}", assetPair, ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Every pair a market runs pools on, plus any other configured pair.
+     */
+    public static Set<String> capturedPairs(PriceConfig config, PoolConfig poolConfig) {
+        Set<String> pairs = new LinkedHashSet<>();
+        for (PoolConfig.Market market : poolConfig.getMarkets()) {
+            pairs.add(market.getAssetPair());
+        }
+        pairs.addAll(config.getAssetPairs());
+        return pairs;
+    }
+}
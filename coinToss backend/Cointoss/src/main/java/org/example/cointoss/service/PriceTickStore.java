@@ -0,0 +1,150 @@
+package org.example.cointoss.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.PriceConfig;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The recorded price ticks pools open and settle on, one {@link MappedTickRing} file per asset
+ * pair under the configured directory. A ring is mapped the first time its pair is used, which
+ * after a restart brings back every tick it still holds. The files belong to this node alone, so
+ * only a node that captured a pool's settlement tick can settle it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PriceTickStore {
+    private final PriceConfig config;
+
+    private final Map<String, MappedTickRing> rings = new ConcurrentHashMap<>();
+
+    /**
+     * Appends a tick. A tick older than the pair's newest one is dropped, since the ring only
+     * holds ticks in time order.
+     */
+    public void record(String assetPair, BigDecimal bid, BigDecimal ask, BigDecimal last, OffsetDateTime capturedAt) {
+        boolean appended = ring(assetPair).append(
+                capturedAt.toInstant().toEpochMilli(), toUnits(bid), toUnits(ask), toUnits(last));
+        if (!appended) {
+            log.debug("Dropped an out-of-order {} tick captured at {}", assetPair, capturedAt);
+        }
+    }
+
+    public void record(String assetPair, BigDecimal last, OffsetDateTime capturedAt) {
+        record(assetPair, null, null, last, capturedAt);
+    }
+
+    /**
+     * The tick captured closest to the given time, the earlier one on a tie. Empty if there is none
+     * within the configured staleness bound.
+     */
+    public Optional<Tick> closestTo(String assetPair, OffsetDateTime time) {
+        MappedTickRing ring = ring(assetPair);
+        long millis = time.toInstant().toEpochMilli();
+        while (true) {
+            long index = ring.closestIndex(millis);
+            if (index < 0) {
+                return Optional.empty();
+            }
+            Tick tick = read(ring, index);
+            if (ring.isReadable(index)) {
+                Duration maxStaleness = Duration.ofMillis(config.getMaxStalenessMs());
+                return Optional.of(tick).filter(t -> t.distanceTo(time).compareTo(maxStaleness) <= 0);
+            }
+        }
+    }
+
+    /**
+     * Every tick captured in [from, to), oldest first.
+     */
+    public List<Tick> range(String assetPair, OffsetDateTime from, OffsetDateTime to) {
+        MappedTickRing ring = ring(assetPair);
+        long toMillis = to.toInstant().toEpochMilli();
+        List<Tick> ticks = new ArrayList<>();
+        long index = ring.firstIndexAtOrAfter(from.toInstant().toEpochMilli());
+        while (index < ring.count()) {
+            Tick tick = read(ring, index);
+            if (!ring.isReadable(index)) {
+                // Overwritten while we were reading; carry on from the oldest tick still in the ring.
+                index = Math.max(index, ring.count() - ring.capacity() + 1);
+                continue;
+            }
+            if (tick.capturedAt().toInstant().toEpochMilli() >= toMillis) {
+                break;
+            }
+            ticks.add(tick);
+            index++;
+        }
+        return ticks;
+    }
+
+    @PreDestroy
+    public void close() {
+        rings.forEach((assetPair, ring) -> {
+            try {
+                ring.close();
+            } catch (IOException ex) {
+                log.warn("Failed to flush the {} tick ring: {}", assetPair, ex.getMessage());
+            }
+        });
+        rings.clear();
+    }
+
+    private MappedTickRing ring(String assetPair) {
+        return rings.computeIfAbsent(assetPair, pair -> {
+            try {
+                Path directory = Path.of(config.getStoreDir());
+                Files.createDirectories(directory);
+                return MappedTickRing.open(directory.resolve(pair.replaceAll("[^A-Za-z0-9]", "-") + ".ticks"),
+                        config.getRingCapacity());
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to open the " + pair + " tick ring", ex);
+            }
+        });
+    }
+
+    private static Tick read(MappedTickRing ring, long index) {
+        return new Tick(
+                fromUnits(ring.lastAt(index)),
+                fromUnits(ring.bidAt(index)),
+                fromUnits(ring.askAt(index)),
+                OffsetDateTime.ofInstant(Instant.ofEpochMilli(ring.timeAt(index)), ZoneOffset.UTC));
+    }
+
+    private static long toUnits(BigDecimal price) {
+        return price == null
+                ? MappedTickRing.NO_PRICE
+                : price.setScale(MappedTickRing.PRICE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal fromUnits(long units) {
+        return units == MappedTickRing.NO_PRICE ? null : BigDecimal.valueOf(units, MappedTickRing.PRICE_SCALE);
+    }
+
+    /**
+     * A captured tick; price is the last traded price, bid and ask may be null.
+     */
+    public record Tick(BigDecimal price, BigDecimal bid, BigDecimal ask, OffsetDateTime capturedAt) {
+        Duration distanceTo(OffsetDateTime time) {
+            return Duration.between(capturedAt, time).abs();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.example.cointoss.service;
+
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.PoolConfig;
+import org.example.cointoss.config.PriceConfig;
+import org.example.cointoss.dtos.TickerResponse;
+import org.example.cointoss.exceptions.PriceUnavailableException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the latest Quidax ticker of every market in memory.
+ *
+ * Every market is refreshed from one request for all of the exchange's tickers, so a poll costs a
+ * single call however many markets are served. The captured pairs are registered up front, so the
+ * first scheduled poll, which runs at startup, warms them. Any other market is registered by its
+ * first request and served from the next poll on; until then it is unavailable. All requests go
+ * through one long-lived HttpClient so the connection is kept alive between polls, and reads
+ * never wait on the exchange.
+ * Publishes the age of each market's price and a counter of failed fetches.
+ */
+@Service
+@Slf4j
+public class QuidaxPriceFeed {
+    private final PriceConfig config;
+    private final String baseUrl;
+    private final MeterRegistry meterRegistry;
+    private final HttpClient httpClient;
+    private final Gson gson = new Gson();
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Counter fetchErrors;
+
+    public QuidaxPriceFeed(PriceConfig config,
+                           PoolConfig poolConfig,
+                           @Value("${quidax.baseUrl}") String baseUrl,
+                           MeterRegistry meterRegistry) {
+        this.config = config;
+        this.baseUrl = baseUrl;
+        this.meterRegistry = meterRegistry;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(config.getFeedRequestTimeoutMs()))
+                .build();
+        this.fetchErrors = Counter.builder("cointoss.prices.feed.errors")
+                .description("Ticker fetches from Quidax that failed")
+                .register(meterRegistry);
+        for (String assetPair : PriceCaptureService.capturedPairs(config, poolConfig)) {
+            String market = assetPair.replace("/", "").toLowerCase();
+            snapshots.computeIfAbsent(market, this::register);
+        }
+    }
+
+    /**
+     * The cached ticker of a market, e.g. "btcusdt". Throws {@link PriceUnavailableException} if
+     * there is none younger than the configured maximum age.
+     */
+    public TickerResponse latest(String marketPair) {
+        String market = marketPair.toLowerCase();
+        // A market nobody asked for before is only polled from now on.
+        Snapshot snapshot = snapshots.computeIfAbsent(market, this::register);
+        if (snapshot.ticker == null || System.currentTimeMillis() - snapshot.fetchedAtMillis > config.getFeedMaxAgeMs()) {
+            throw new PriceUnavailableException(marketPair);
+        }
+        return snapshot.ticker;
+    }
+
+    @Scheduled(fixedDelayString = "${cointoss.prices.feed-poll-interval-ms:1000}")
+    public void poll() {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, TickerResponse.TickerDataWrapper> tickers = fetchAll();
+            long fetchedAtMillis = System.currentTimeMillis();
+            snapshots.forEach((market, snapshot) -> {
+                TickerResponse.TickerDataWrapper data = tickers.get(market);
+                if (data == null || data.getTicker() == null || data.getTicker().getLastPrice() == null) {
+                    // Left to age out, so the market fails once its price is too old.
+                    log.warn("Quidax returned no ticker for {}", market);
+                    return;
+                }
+                TickerResponse ticker = new TickerResponse();
+                ticker.setData(data);
+                snapshot.fetchedAtMillis = fetchedAtMillis;
+                snapshot.ticker = ticker;
+            });
+        } catch (IOException | RuntimeException ex) {
+            fetchErrors.increment();
+            log.warn("Failed to fetch the Quidax tickers: {}", ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Snapshot register(String market) {
+        Snapshot snapshot = new Snapshot();
+        Gauge.builder("cointoss.prices.feed.age", snapshot,
+                        s -> s.ticker == null ? Double.NaN : (System.currentTimeMillis() - s.fetchedAtMillis) / 1000.0)
+                .description("Seconds since the cached price was fetched")
+                .tag("market", market)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        return snapshot;
+    }
+
+    private Map<String, TickerResponse.TickerDataWrapper> fetchAll() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/markets/tickers"))
+                .timeout(Duration.ofMillis(config.getFeedRequestTimeoutMs()))
+                .header("accept", "application/json")
+                .GET()
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode());
+        }
+        TickersResponse tickers = gson.fromJson(response.body(), TickersResponse.class);
+        if (tickers == null || tickers.data == null) {
+            throw new IOException("Response has no tickers");
+        }
+        return tickers.data;
+    }
+
+    // Body of /markets/tickers: every market's ticker keyed by market, e.g. "btcusdt".
+    private static class TickersResponse {
+        private Map<String, TickerResponse.TickerDataWrapper> data;
+    }
+
+    private static class Snapshot {
+        private volatile TickerResponse ticker;
+        private volatile long fetchedAtMillis;
+    }
+}
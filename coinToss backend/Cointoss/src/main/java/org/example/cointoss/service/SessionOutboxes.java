@@ -0,0 +1,396 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.BroadcastConfig;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives every WebSocket session a bounded queue of its own, so a few slow clients cannot back up
+ * the broker threads every other subscriber depends on.
+ *
+ * Sending to a session only queues the STOMP frame; a small pool of writer threads drains each
+ * queue onto its socket. A pool update still queued when a newer one for the same pool arrives is
+ * replaced by it, since the newer one carries the latest totals. The replaced update's deltas are
+ * lost with it, which its client sees as a gap in the sequence (see
+ * {@link org.example.cointoss.dtos.PoolUpdateDto}). A session that falls behind anyway, with more
+ * queued than the buffer limit or nothing taken within the time limit, is disconnected; its client
+ * reconnects and resubscribes for a fresh snapshot.
+ *
+ * Socket writes block, so a watchdog checks the writes in progress on a short interval. For every
+ * write that has run longer than that it lets the pool add a writer, up to the maximum, so the
+ * other sessions keep being served; a write past the time limit gets its session disconnected,
+ * which is also what aborts the write. A session is closed once, by whichever thread evicts it.
+ *
+ * Publishes cointoss.websocket.outbound.queued, .dropped and .evicted tagged by topic (pool,
+ * price, ...).
+ */
+@Service
+@Slf4j
+public class SessionOutboxes {
+    private static final String SUPERSEDED_PREFIX = "/topic/pool/";
+    // A writer moves on to another session after this many messages, so a busy one cannot hog it.
+    private static final int WRITE_BATCH = 32;
+
+    private final BroadcastConfig config;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor writers;
+    private final ScheduledExecutorService watchdog;
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+    // Every topic's meters, registered the first time the topic is seen.
+    private final Map<String, TopicMeters> topics = new ConcurrentHashMap<>();
+
+    public SessionOutboxes(BroadcastConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = new ThreadPoolExecutor(config.getOutboundThreads(), config.getOutboundThreads(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "ws-outbound-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-outbound-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.scheduleWithFixedDelay(this::checkWrites, config.getOutboundCheckIntervalMs(),
+                config.getOutboundCheckIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        watchdog.shutdownNow();
+        writers.shutdownNow();
+    }
+
+    /**
+     * Disconnects the sessions whose write has run past the time limit, and sizes the writer pool
+     * to the configured threads plus one for every write running longer than a check interval.
+     */
+    void checkWrites() {
+        long now = System.nanoTime();
+        long limitNanos = TimeUnit.MILLISECONDS.toNanos(config.getSessionSendTimeLimitMs());
+        long stuckNanos = TimeUnit.MILLISECONDS.toNanos(config.getOutboundCheckIntervalMs());
+        int stuck = 0;
+        for (Outbox outbox : outboxes.values()) {
+            Queued inFlight = outbox.inFlight;
+            long writeStarted = outbox.writeStartedNanos;
+            if (inFlight == null || writeStarted == 0 || now - writeStarted <= stuckNanos) {
+                continue;
+            }
+            // Still holds its writer until the close aborts the write.
+            stuck++;
+            if (now - writeStarted > limitNanos) {
+                try {
+                    outbox.evict(inFlight.topic(), "time");
+                } catch (RuntimeException ex) {
+                    log.warn("Failed to disconnect WebSocket session {}: {}", outbox.getId(), ex.getMessage());
+                }
+            }
+        }
+        int threads = Math.max(config.getOutboundThreads(),
+                Math.min(config.getMaxOutboundThreads(), config.getOutboundThreads() + stuck));
+        if (threads > writers.getMaximumPoolSize()) {
+            writers.setMaximumPoolSize(threads);
+            writers.setCorePoolSize(threads);
+        } else if (threads < writers.getCorePoolSize()) {
+            writers.setCorePoolSize(threads);
+            writers.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Wraps the STOMP handler so every session it is handed sends through an outbox.
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                super.afterConnectionEstablished(open(session));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                Outbox outbox = outboxes.remove(session.getId());
+                if (outbox != null) {
+                    outbox.discard();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    WebSocketSession open(WebSocketSession session) {
+        Outbox outbox = new Outbox(session);
+        outboxes.put(session.getId(), outbox);
+        return outbox;
+    }
+
+    /**
+     * The destination header of a STOMP frame, or null if it has none (e.g. a heartbeat).
+     */
+    static String destination(WebSocketMessage<?> message) {
+        if (!(message instanceof TextMessage text)) {
+            return null;
+        }
+        String frame = text.getPayload();
+        // Headers follow the command line and end at the first blank line.
+        int lineStart = frame.indexOf('\n') + 1;
+        while (lineStart > 0 && lineStart < frame.length()) {
+            int lineEnd = frame.indexOf('\n', lineStart);
+            if (lineEnd < 0 || lineEnd == lineStart) {
+                return null;
+            }
+            if (frame.startsWith("destination:", lineStart)) {
+                return frame.substring(lineStart + "destination:".length(), lineEnd);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return null;
+    }
+
+    /**
+     * The metric tag for a destination: its second segment, e.g. pool for /topic/pool/7.
+     */
+    static String topic(String destination) {
+        if (destination == null) {
+            return "session";
+        }
+        String[] segments = destination.split("/");
+        return segments.length > 2 ? segments[2] : "other";
+    }
+
+    private TopicMeters meters(String topic) {
+        return topics.computeIfAbsent(topic, key -> new TopicMeters(meterRegistry, key));
+    }
+
+    private static class TopicMeters {
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Counter superseded;
+        private final Counter disconnected;
+        private final Counter evictedBuffer;
+        private final Counter evictedTime;
+
+        TopicMeters(MeterRegistry meterRegistry, String topic) {
+            Gauge.builder("cointoss.websocket.outbound.queued", queued, AtomicInteger::get)
+                    .description("Messages waiting to be written to WebSocket sessions")
+                    .tag("topic", topic)
+                    .register(meterRegistry);
+            this.superseded = dropped(meterRegistry, topic, "superseded");
+            this.disconnected = dropped(meterRegistry, topic, "disconnected");
+            this.evictedBuffer = evicted(meterRegistry, topic, "buffer");
+            this.evictedTime = evicted(meterRegistry, topic, "time");
+        }
+
+        Counter evicted(String reason) {
+            return "buffer".equals(reason) ? evictedBuffer : evictedTime;
+        }
+
+        private static Counter dropped(MeterRegistry meterRegistry, String topic, String reason) {
+            return Counter.builder("cointoss.websocket.outbound.dropped")
+                    .description("Messages never written to a WebSocket session")
+                    .tag("topic", topic)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        private static Counter evicted(MeterRegistry meterRegistry, String topic, String reason) {
+            return Counter.builder("cointoss.websocket.outbound.evicted")
+                    .description("WebSocket sessions disconnected for falling behind")
+                    .tag("topic", topic)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+    }
+
+    private record Queued(WebSocketMessage<?> message, String topic, int size, long queuedNanos) {}
+
+    private class Outbox extends WebSocketSessionDecorator {
+        // Guarded by this. Pool updates are keyed by destination so a newer one takes the older
+        // one's place; everything else by a key of its own.
+        private final LinkedHashMap<Object, Queued> queue = new LinkedHashMap<>();
+        private int bytes;
+        private boolean writing;
+        private boolean closed;
+        private boolean closeSent;
+        // The message being written and when its write started, or null and 0.
+        private volatile Queued inFlight;
+        private volatile long writeStartedNanos;
+
+        Outbox(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public boolean isOpen() {
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+            }
+            return super.isOpen();
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            String destination = destination(message);
+            String topic = topic(destination);
+            String overflow;
+            boolean startWriter;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                Object key = destination != null && destination.startsWith(SUPERSEDED_PREFIX) ? destination : new Object();
+                Queued superseded = queue.get(key);
+                if (superseded != null) {
+                    // Takes the older update's place, and its age.
+                    queue.put(key, new Queued(message, topic, message.getPayloadLength(), superseded.queuedNanos()));
+                    bytes += message.getPayloadLength() - superseded.size();
+                    meters(topic).superseded.increment();
+                } else {
+                    queue.put(key, new Queued(message, topic, message.getPayloadLength(), System.nanoTime()));
+                    bytes += message.getPayloadLength();
+                    meters(topic).queued.incrementAndGet();
+                }
+                overflow = overflow();
+                startWriter = overflow == null && !writing;
+                if (startWriter) {
+                    writing = true;
+                }
+            }
+            if (overflow != null) {
+                evict(topic, overflow);
+            } else if (startWriter) {
+                startWriter();
+            }
+        }
+
+        private String overflow() {
+            if (bytes > config.getSessionBufferBytes()) {
+                return "buffer";
+            }
+            long limitNanos = TimeUnit.MILLISECONDS.toNanos(config.getSessionSendTimeLimitMs());
+            long now = System.nanoTime();
+            long writeStarted = writeStartedNanos;
+            if (writeStarted != 0 && now - writeStarted > limitNanos) {
+                return "time";
+            }
+            Iterator<Queued> oldest = queue.values().iterator();
+            if (oldest.hasNext() && now - oldest.next().queuedNanos() > limitNanos) {
+                return "time";
+            }
+            return null;
+        }
+
+        private void startWriter() {
+            try {
+                writers.execute(this::write);
+            } catch (RejectedExecutionException ex) {
+                // Shutting down.
+                discard();
+            }
+        }
+
+        private void write() {
+            for (int written = 0; written < WRITE_BATCH; written++) {
+                Queued next;
+                synchronized (this) {
+                    Iterator<Queued> entries = queue.values().iterator();
+                    if (closed || !entries.hasNext()) {
+                        writing = false;
+                        return;
+                    }
+                    next = entries.next();
+                    entries.remove();
+                    bytes -= next.size();
+                    inFlight = next;
+                    writeStartedNanos = System.nanoTime();
+                }
+                meters(next.topic()).queued.decrementAndGet();
+                try {
+                    getDelegate().sendMessage(next.message());
+                } catch (IOException | RuntimeException ex) {
+                    // Also how a write aborted by an eviction ends; the session is closed once.
+                    log.debug("Failed to write to WebSocket session {}: {}", getId(), ex.getMessage());
+                    discard();
+                    closeOnce();
+                    return;
+                } finally {
+                    writeStartedNanos = 0;
+                    inFlight = null;
+                }
+            }
+            // More is waiting; back of the line behind the other sessions.
+            startWriter();
+        }
+
+        // Called by the sending thread or the watchdog; only the first eviction counts.
+        private void evict(String topic, String reason) {
+            if (!discard()) {
+                return;
+            }
+            meters(topic).evicted(reason).increment();
+            log.info("Disconnected WebSocket session {}, which fell behind on {} ({})", getId(), topic, reason);
+            closeOnce();
+        }
+
+        // Drops whatever is still queued; nothing is sent after this. False if already discarded.
+        boolean discard() {
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                closed = true;
+                writing = false;
+                for (Queued entry : queue.values()) {
+                    TopicMeters meters = meters(entry.topic());
+                    meters.queued.decrementAndGet();
+                    meters.disconnected.increment();
+                }
+                queue.clear();
+                bytes = 0;
+                return true;
+            }
+        }
+
+        private void closeOnce() {
+            synchronized (this) {
+                if (closeSent) {
+                    return;
+                }
+                closeSent = true;
+            }
+            try {
+                getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException ex) {
+                log.debug("Failed to close WebSocket session {}: {}", getId(), ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package org.example.cointoss.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.SettlementConfig;
+import org.example.cointoss.utilities.MoneyUtil;
+import org.example.cointoss.utilities.PayoutCalculator;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Settles a pool in chunks, each committed on its own, so memory stays flat and a crash only
+ * loses the chunk in flight.
+ *
+ * {@link #plan} fixes everything a payout depends on and stores it as the pool's settlement
+ * checkpoint: the outcome, the pot, and the cut-off of the largest-remainder ranking, which the
+ * database works out without the bets ever being loaded together. With that, any winning bet's
+ * payout can be computed on its own, so {@link #settle} streams the winners in id order a chunk at
+ * a time. Each chunk pays its bets, credits their wallets and moves the checkpoint past them in one
+ * transaction, so a restarted instance picks up after the last committed chunk and no wallet is
+ * credited twice. The last transaction marks the losers and the pool and drops the checkpoint.
+ *
+ * Payouts come out exactly as {@link PayoutCalculator#allocate} would give them. A pool that can
+ * never be settled is voided instead, which refunds every stake.
+ */
+@Service
+@Slf4j
+public class SettlementEngine {
+    // 5% house rake
+    static final int PAYOUT_PERCENT = 95;
+
+    private static final String TOTALS_SQL = """
+            SELECT COALESCE(SUM(CASE WHEN direction = 'UP' THEN amount END), 0) AS up_total,
+                   COALESCE(SUM(CASE WHEN direction = 'DOWN' THEN amount END), 0) AS down_total,
+                   COUNT(*) AS bet_count
+            FROM bets WHERE pool_id = ? AND status = 'PENDING'
+            """;
+
+    // Each winner's PayoutCalculator.remainder, done in the database with exact integer arithmetic.
+    private static final String REMAINDER = "MOD(CAST(? AS DECIMAL(38, 0)) * CAST(amount * 100 AS DECIMAL(38, 0)), ?)";
+
+    // The remainders add up to a whole number of kobo: exactly those left over after rounding down.
+    private static final String LEFTOVER_SQL = "SELECT COALESCE(SUM(" + REMAINDER + "), 0) FROM bets "
+            + "WHERE pool_id = ? AND status = 'PENDING' AND direction = ?";
+
+    // The winner ranked last among those that get a leftover kobo. Ties go to the earlier bet.
+    private static final String THRESHOLD_SQL = "SELECT id, " + REMAINDER + " AS remainder FROM bets "
+            + "WHERE pool_id = ? AND status = 'PENDING' AND direction = ? "
+            + "ORDER BY remainder DESC, id LIMIT 1 OFFSET ?";
+
+    private static final String INSERT_CHECKPOINT_SQL = """
+            INSERT INTO settlement_checkpoints (pool_id, winning_direction, end_price, total_up_pool, total_down_pool,
+                bet_count, pot, winning_total, leftover, threshold_remainder, threshold_bet_id, last_bet_id, settled_bets,
+                created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, 0, ?, ?)
+            """;
+
+    private static final String CHECKPOINT_SQL = """
+            SELECT pool_id, winning_direction, end_price, total_up_pool, total_down_pool, bet_count,
+                   pot, winning_total, leftover, threshold_remainder, threshold_bet_id
+            FROM settlement_checkpoints WHERE pool_id = ?
+            """;
+
+    // Locks the checkpoint, so two instances can never settle the same chunk.
+    private static final String LOCK_CHECKPOINT_SQL =
+            "SELECT last_bet_id FROM settlement_checkpoints WHERE pool_id = ? FOR UPDATE";
+
+    private static final String WINNERS_CHUNK_SQL = """
+            SELECT id, user_id, amount FROM bets
+            WHERE pool_id = ? AND status = 'PENDING' AND direction = ? AND id > ?
+            ORDER BY id LIMIT ?
+            """;
+
+    private static final String PAY_WINNER_SQL =
+            "UPDATE bets SET status = 'WON', payout = ? WHERE id = ? AND status = 'PENDING'";
+
+    private static final String CREDIT_SQL = "UPDATE wallets SET balance = balance + ? WHERE user_id = ?";
+
+    private static final String ADVANCE_CHECKPOINT_SQL = """
+            UPDATE settlement_checkpoints SET last_bet_id = ?, settled_bets = settled_bets + ?, updated_at = ?
+            WHERE pool_id = ?
+            """;
+
+    private static final String DELETE_CHECKPOINT_SQL = "DELETE FROM settlement_checkpoints WHERE pool_id = ?";
+
+    private static final String SETTLE_LOSERS_SQL =
+            "UPDATE bets SET status = 'LOST', payout = 0 WHERE pool_id = ? AND status = 'PENDING' AND direction <> ?";
+
+    private static final String SETTLE_POOL_SQL = """
+            UPDATE betting_pools SET status = 'SETTLED', end_price = ?, total_up_pool = ?, total_down_pool = ?
+            WHERE id = ?
+            """;
+
+    // Only a pool whose settlement has not started can be voided; one with a checkpoint is finished instead.
+    private static final String VOID_POOL_SQL = """
+            UPDATE betting_pools SET status = 'VOID'
+            WHERE id = ? AND status IN ('LOCKED', 'RETRY')
+              AND NOT EXISTS (SELECT 1 FROM settlement_checkpoints WHERE pool_id = ?)
+            """;
+
+    private static final String STAKES_BY_USER_SQL = """
+            SELECT user_id, SUM(amount) AS stake FROM bets
+            WHERE pool_id = ? AND status = 'PENDING'
+            GROUP BY user_id ORDER BY user_id
+            """;
+
+    private static final String REFUND_BETS_SQL =
+            "UPDATE bets SET status = 'REFUNDED', payout = amount WHERE pool_id = ? AND status = 'PENDING'";
+
+    private final SettlementConfig config;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public SettlementEngine(SettlementConfig config,
+                            JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager) {
+        this.config = config;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * The plan of a pool whose settlement started but has not finished.
+     */
+    public Optional<Plan> findPlan(Long poolId) {
+        List<Plan> plans = jdbcTemplate.query(CHECKPOINT_SQL, (rs, rowNum) -> new Plan(
+                rs.getLong("pool_id"),
+                rs.getString("winning_direction"),
+                rs.getBigDecimal("end_price"),
+                rs.getBigDecimal("total_up_pool"),
+                rs.getBigDecimal("total_down_pool"),
+                rs.getLong("bet_count"),
+                rs.getLong("pot"),
+                rs.getLong("winning_total"),
+                rs.getLong("leftover"),
+                rs.getObject("threshold_remainder", Long.class),
+                rs.getObject("threshold_bet_id", Long.class)), poolId);
+        return plans.stream().findFirst();
+    }
+
+    /**
+     * Fixes the outcome and the payout of every bet, and stores them as the pool's checkpoint. If
+     * another instance got there first, its plan is returned instead.
+     */
+    public Plan plan(Long poolId, BigDecimal endPrice, String winningDirection) {
+        try {
+            return transactionTemplate.execute(status -> createPlan(poolId, endPrice, winningDirection));
+        } catch (DuplicateKeyException ex) {
+            return findPlan(poolId).orElseThrow(() -> ex);
+        }
+    }
+
+    private Plan createPlan(Long poolId, BigDecimal endPrice, String winningDirection) {
+        Plan totals = jdbcTemplate.queryForObject(TOTALS_SQL, (rs, rowNum) -> new Plan(
+                poolId, winningDirection, endPrice,
+                rs.getBigDecimal("up_total"),
+                rs.getBigDecimal("down_total"),
+                rs.getLong("bet_count"),
+                0, 0, 0, null, null), poolId);
+
+        long pot = PayoutCalculator.winningsPool(
+                MoneyUtil.toMinor(totals.totalUpPool().add(totals.totalDownPool())), PAYOUT_PERCENT);
+        long winningTotal = MoneyUtil.toMinor("UP".equals(winningDirection) ? totals.totalUpPool() : totals.totalDownPool());
+
+        long leftover = 0;
+        Long thresholdRemainder = null;
+        Long thresholdBetId = null;
+        if (winningTotal > 0) {
+            BigDecimal remainders = jdbcTemplate.queryForObject(LEFTOVER_SQL, BigDecimal.class,
+                    pot, winningTotal, poolId, winningDirection);
+            leftover = remainders.divide(BigDecimal.valueOf(winningTotal)).longValueExact();
+        }
+        if (leftover > 0) {
+            Object[] threshold = jdbcTemplate.queryForObject(THRESHOLD_SQL,
+                    (rs, rowNum) -> new Object[]{rs.getLong("id"), rs.getBigDecimal("remainder").longValueExact()},
+                    pot, winningTotal, poolId, winningDirection, leftover - 1);
+            thresholdBetId = (Long) threshold[0];
+            thresholdRemainder = (Long) threshold[1];
+        }
+
+        Plan plan = new Plan(poolId, winningDirection, endPrice, totals.totalUpPool(), totals.totalDownPool(),
+                totals.betCount(), pot, winningTotal, leftover, thresholdRemainder, thresholdBetId);
+        OffsetDateTime now = OffsetDateTime.now();
+        jdbcTemplate.update(INSERT_CHECKPOINT_SQL, poolId, winningDirection, endPrice, plan.totalUpPool(),
+                plan.totalDownPool(), plan.betCount(), pot, winningTotal, leftover, thresholdRemainder, thresholdBetId,
+                now, now);
+        return plan;
+    }
+
+    /**
+     * Pays every remaining winner chunk by chunk, then marks the losers and the pool. Does nothing
+     * if the pool has already been settled.
+     */
+    public void settle(Plan plan) {
+        while (Boolean.TRUE.equals(transactionTemplate.execute(status -> settleNextChunk(plan)))) {
+            log.debug("Settled a chunk of pool {}", plan.poolId());
+        }
+        transactionTemplate.executeWithoutResult(status -> finish(plan));
+    }
+
+    /**
+     * Pays the next chunk of winners. Returns false once there are none left, or if the pool's
+     * checkpoint is gone because its settlement has finished.
+     */
+    boolean settleNextChunk(Plan plan) {
+        List<Long> lastBetIds = jdbcTemplate.queryForList(LOCK_CHECKPOINT_SQL, Long.class, plan.poolId());
+        if (lastBetIds.isEmpty()) {
+            return false;
+        }
+
+        int chunkSize = config.getChunkSize();
+        long[] betIds = new long[chunkSize];
+        long[] payouts = new long[chunkSize];
+        Map<Long, Long> creditsByUser = new TreeMap<>();
+        int[] count = {0};
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(WINNERS_CHUNK_SQL);
+            ps.setFetchSize(chunkSize);
+            ps.setLong(1, plan.poolId());
+            ps.setString(2, plan.winningDirection());
+            ps.setLong(3, lastBetIds.get(0));
+            ps.setInt(4, chunkSize);
+            return ps;
+        }, rs -> {
+            long betId = rs.getLong("id");
+            long payout = plan.payout(betId, MoneyUtil.toMinor(rs.getBigDecimal("amount")));
+            betIds[count[0]] = betId;
+            payouts[count[0]] = payout;
+            count[0]++;
+            creditsByUser.merge(rs.getLong("user_id"), payout, Long::sum);
+        });
+        int settled = count[0];
+        if (settled == 0) {
+            return false;
+        }
+
+        jdbcTemplate.batchUpdate(PAY_WINNER_SQL, indices(settled), settled, (ps, i) -> {
+            ps.setBigDecimal(1, MoneyUtil.fromMinor(payouts[i]));
+            ps.setLong(2, betIds[i]);
+        });
+        // Locks are always taken checkpoint, then bets, then wallets in user id order, the order the
+        // bet ingestion debits use too. Pools settling in parallel with a winner in common therefore
+        // wait for each other instead of deadlocking.
+        List<Map.Entry<Long, Long>> credits = new ArrayList<>(creditsByUser.entrySet());
+        jdbcTemplate.batchUpdate(CREDIT_SQL, credits, credits.size(), (ps, credit) -> {
+            ps.setBigDecimal(1, MoneyUtil.fromMinor(credit.getValue()));
+            ps.setLong(2, credit.getKey());
+        });
+        jdbcTemplate.update(ADVANCE_CHECKPOINT_SQL, betIds[settled - 1], settled, OffsetDateTime.now(), plan.poolId());
+        return true;
+    }
+
+    /**
+     * Marks a pool that cannot be settled VOID and gives every bettor their stakes back, all in one
+     * transaction. Returns false, changing nothing, if the pool is no longer LOCKED or RETRY or its
+     * settlement has already started.
+     */
+    public boolean voidPool(Long poolId) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (jdbcTemplate.update(VOID_POOL_SQL, poolId, poolId) == 0) {
+                return false;
+            }
+            List<Map.Entry<Long, BigDecimal>> refunds = jdbcTemplate.query(STAKES_BY_USER_SQL,
+                    (rs, rowNum) -> Map.entry(rs.getLong("user_id"), rs.getBigDecimal("stake")), poolId);
+            jdbcTemplate.update(REFUND_BETS_SQL, poolId);
+            // Wallets in user id order, as in settleNextChunk.
+            jdbcTemplate.batchUpdate(CREDIT_SQL, refunds, refunds.size(), (ps, refund) -> {
+                ps.setBigDecimal(1, refund.getValue());
+                ps.setLong(2, refund.getKey());
+            });
+            return true;
+        }));
+    }
+
+    private void finish(Plan plan) {
+        if (jdbcTemplate.update(DELETE_CHECKPOINT_SQL, plan.poolId()) == 0) {
+            return;
+        }
+        jdbcTemplate.update(SETTLE_LOSERS_SQL, plan.poolId(), plan.winningDirection());
+        jdbcTemplate.update(SETTLE_POOL_SQL, plan.endPrice(), plan.totalUpPool(), plan.totalDownPool(), plan.poolId());
+    }
+
+    private static List<Integer> indices(int size) {
+        List<Integer> indices = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            indices.add(i);
+        }
+        return indices;
+    }
+
+    /**
+     * Everything a pool's payouts depend on, as stored in its checkpoint. Amounts ending in
+     * "Pool" are the pool totals; pot and winningTotal are in kobo.
+     */
+    public record Plan(Long poolId,
+                       String winningDirection,
+                       BigDecimal endPrice,
+                       BigDecimal totalUpPool,
+                       BigDecimal totalDownPool,
+                       long betCount,
+                       long pot,
+                       long winningTotal,
+                       long leftover,
+                       Long thresholdRemainder,
+                       Long thresholdBetId) {
+
+        /**
+         * A winning bet's payout: its share rounded down, plus a leftover kobo if it ranks at or
+         * above the threshold.
+         */
+        long payout(long betId, long stake) {
+            if (winningTotal == 0) {
+                return 0;
+            }
+            long payout = PayoutCalculator.floorShare(pot, stake, winningTotal);
+            if (leftover > 0) {
+                long remainder = PayoutCalculator.remainder(pot, stake, winningTotal);
+                if (remainder > thresholdRemainder || (remainder == thresholdRemainder && betId <= thresholdBetId)) {
+                    payout++;
+                }
+            }
+            return payout;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.dtos.BetResultsDto;
+import org.example.cointoss.utilities.MoneyUtil;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes each bettor their results once a pool has settled: one message per user to
+ * /user/queue/results with the outcome and payout of every bet they placed in it and their wallet
+ * balance after it paid out, so clients no longer refetch their wallet after every round.
+ *
+ * The pool's bets are read in one query. Only users with a session on this node are sent theirs;
+ * every node hears of the settlement through the {@link ClusterFanout} and serves its own.
+ */
+@Service
+@Slf4j
+public class SettlementResults {
+    private static final String RESULTS_SQL = """
+            SELECT b.user_id, b.id, b.amount, b.direction, b.status, b.payout, w.balance
+            FROM bets b JOIN wallets w ON w.user_id = b.user_id
+            WHERE b.pool_id = ?
+            ORDER BY b.user_id, b.id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SimpUserRegistry simpUserRegistry;
+    private final Counter pushed;
+    private final Timer broadcastTimer;
+
+    public SettlementResults(JdbcTemplate jdbcTemplate,
+                             SimpMessagingTemplate messagingTemplate,
+                             SimpUserRegistry simpUserRegistry,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.messagingTemplate = messagingTemplate;
+        this.simpUserRegistry = simpUserRegistry;
+        this.pushed = Counter.builder("cointoss.settlement.results.pushed")
+                .description("Settled pool results pushed to connected users")
+                .register(meterRegistry);
+        this.broadcastTimer = Timer.builder("cointoss.websocket.broadcast")
+                .description("Time to hand a message to the broker for every subscriber")
+                .publishPercentileHistogram()
+                .tag("topic", "results")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Sends a settled pool's results to every bettor connected to this node.
+     */
+    public void push(Long poolId) {
+        if (simpUserRegistry.getUserCount() == 0) {
+            return;
+        }
+        try {
+            UserResults[] current = {null};
+            jdbcTemplate.query(RESULTS_SQL, rs -> {
+                long userId = rs.getLong("user_id");
+                if (current[0] == null || current[0].userId != userId) {
+                    send(poolId, current[0]);
+                    current[0] = new UserResults(userId, rs.getBigDecimal("balance"));
+                }
+                current[0].add(rs);
+            }, poolId);
+            send(poolId, current[0]);
+        } catch (RuntimeException ex) {
+            // Clients still see the result in their wallet; nothing is retried.
+            log.warn("Failed to push the results of pool {}: {}", poolId, ex.getMessage());
+        }
+    }
+
+    private void send(Long poolId, UserResults results) {
+        if (results == null || simpUserRegistry.getUser(String.valueOf(results.userId)) == null) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        messagingTemplate.convertAndSendToUser(String.valueOf(results.userId), "/queue/results",
+                new BetResultsDto(poolId, results.bets, MoneyUtil.fromMinor(results.totalPayoutMinor), results.balance));
+        broadcastTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        pushed.increment();
+    }
+
+    private static class UserResults {
+        private final long userId;
+        private final BigDecimal balance;
+        private final List<BetResultsDto.BetResult> bets = new ArrayList<>();
+        private long totalPayoutMinor;
+
+        UserResults(long userId, BigDecimal balance) {
+            this.userId = userId;
+            this.balance = balance;
+        }
+
+        void add(ResultSet rs) throws SQLException {
+            BigDecimal payout = rs.getBigDecimal("payout");
+            bets.add(new BetResultsDto.BetResult(
+                    rs.getLong("id"),
+                    rs.getBigDecimal("amount"),
+                    rs.getString("direction"),
+                    rs.getString("status"),
+                    payout));
+            if (payout != null) {
+                totalPayoutMinor += MoneyUtil.toMinor(payout);
+            }
+        }
+    }
+}
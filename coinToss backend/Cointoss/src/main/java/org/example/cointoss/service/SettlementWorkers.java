@@ -0,0 +1,64 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cointoss.config.SettlementConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The bounded pool of threads due pools are settled on, so a backlog of pools drains in parallel
+ * instead of one after another on the scheduler thread.
+ */
+@Component
+@Slf4j
+public class SettlementWorkers {
+    private final ThreadPoolExecutor executor;
+
+    public SettlementWorkers(SettlementConfig config, MeterRegistry meterRegistry) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                config.getWorkers(), config.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "settlement-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("cointoss.settlement.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Due pools waiting for a settlement worker")
+                .register(meterRegistry);
+        Gauge.builder("cointoss.settlement.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Pools being settled right now")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs a settlement on a worker and completes with its result. Throws
+     * {@link RejectedExecutionException} if the queue is full.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> settlement) {
+        return CompletableFuture.supplyAsync(settlement, executor);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            // Unfinished pools keep their checkpoint and resume on the next start.
+            log.warn("Settlement workers still busy at shutdown, interrupting them");
+            executor.shutdownNow();
+        }
+    }
+}
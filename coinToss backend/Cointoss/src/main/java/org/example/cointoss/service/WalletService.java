@@ -11,8 +11,10 @@ import org.example.cointoss.exceptions.BankAccountExistsException;
 import org.example.cointoss.exceptions.BankAccountNotFoundException;
 import org.example.cointoss.exceptions.WalletNotFoundException;
 import org.example.cointoss.mappers.WalletMapper;
+import org.example.cointoss.repositories.TransactionRepository;
 import org.example.cointoss.repositories.WalletRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 
@@ -20,8 +22,10 @@ import java.math.BigDecimal;
 @RequiredArgsConstructor
 public class WalletService {
     private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
     private final PaymentGateway paymentGateway;
     private final WalletMapper walletMapper;
+    private final TransactionTemplate transactionTemplate;
 
     @Transactional
     public String fundWallet(Long walletId, BigDecimal amount) {
@@ -99,7 +103,28 @@ public class WalletService {
         return walletMapper.toBankAccountDto(bankAccount);
     }
 
+    /**
+     * Takes the amount out of the wallet and asks Korapay to pay it out. The debit and the PENDING
+     * transaction commit on their own before the gateway is called, so the wallet row is not
+     * locked, and the user's bets not held up, for the length of the HTTP call. A payout the
+     * gateway rejects is credited back; one whose outcome is unknown stays PENDING for the webhook.
+     */
     public InitiatePayoutResponse makeWithdrawal(Long walletId, Long bankAccountId, BigDecimal amount) {
+        PendingWithdrawal withdrawal = transactionTemplate.execute(status -> debitForWithdrawal(walletId, bankAccountId, amount));
+
+        var response = paymentGateway.initiatePayout(withdrawal.request());
+        if (response == null) {
+            // Timed out or unreadable: the payout may still happen, so nothing is refunded here.
+            return null;
+        }
+        if (!response.isStatus()) {
+            transactionTemplate.executeWithoutResult(status -> refundWithdrawal(withdrawal, amount));
+            return null;
+        }
+        return response;
+    }
+
+    private PendingWithdrawal debitForWithdrawal(Long walletId, Long bankAccountId, BigDecimal amount) {
         var wallet = walletRepository.fetchByIdWithBankAccounts(walletId)
                 .orElseThrow(WalletNotFoundException::new);
 
@@ -112,7 +137,9 @@ public class WalletService {
             throw new BankAccountNotFoundException("Bank account not found: " + bankAccountId);
         }
 
-        if (!wallet.hasSufficientBalance(amount)) {
+        // Check and subtract in one statement, so two withdrawals can't both spend the same balance.
+        // The loaded wallet is not saved afterwards, as its balance is now stale.
+        if (walletRepository.debit(wallet.getUser().getId(), amount) == 0) {
             throw new IllegalArgumentException("Insufficient balance");
         }
 
@@ -121,12 +148,10 @@ public class WalletService {
                 .amount(amount)
                 .type(TransactionType.WITHDRAWAL)
                 .transactionStatus(TransactionStatus.PENDING)
+                .wallet(wallet)
                 .build();
 
-        wallet.addTransaction(transaction);
-        wallet.setBalance(wallet.getBalance().subtract(amount));
-
-        walletRepository.save(wallet);
+        transactionRepository.save(transaction);
 
         var request = WithdrawFundRequest.builder()
                 .amount(amount.toString())
@@ -137,11 +162,16 @@ public class WalletService {
                 .accountNumber(bankAccount.getAccountNumber())
                 .bankCode(bankAccount.getBankCode())
                 .build();
+        return new PendingWithdrawal(wallet.getUser().getId(), transaction.getTransactionReference(), request);
+    }
 
-        var response = paymentGateway.initiatePayout(request);
-        if (!response.isStatus())
-            return null;
-
-        return response;
+    private void refundWithdrawal(PendingWithdrawal withdrawal, BigDecimal amount) {
+        walletRepository.credit(withdrawal.userId(), amount);
+        transactionRepository.findByTransactionReference(withdrawal.reference()).ifPresent(transaction -> {
+            transaction.setTransactionStatus(TransactionStatus.FAILED);
+            transactionRepository.save(transaction);
+        });
     }
+
+    private record PendingWithdrawal(Long userId, String reference, WithdrawFundRequest request) {}
 }
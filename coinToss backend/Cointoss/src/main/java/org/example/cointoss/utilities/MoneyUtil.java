@@ -0,0 +1,19 @@
+package org.example.cointoss.utilities;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Converts between the DECIMAL(10, 2) amounts stored in the database and
+ * minor units (kobo), which is what the in-memory hot paths count in.
+ */
+public class MoneyUtil {
+
+    public static long toMinor(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal fromMinor(long minor) {
+        return BigDecimal.valueOf(minor, 2);
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.cointoss.utilities;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Splits a pot between winning stakes in proportion to each stake, in minor units (kobo).
+ *
+ * Every stake first gets the floor of its exact share. The kobo left over after flooring (always
+ * fewer than the number of stakes) go one each to the stakes with the largest remainders, ties
+ * going to the earlier stake. The payouts therefore add up to exactly the pot.
+ *
+ * Works on primitive arrays only: a call allocates the result and two scratch arrays, nothing per stake.
+ */
+public class PayoutCalculator {
+
+    /**
+     * The pot left for the winners once the house has taken its cut. Fractions of a kobo stay with the house.
+     */
+    public static long winningsPool(long totalMinor, int payoutPercent) {
+        return Math.multiplyExact(totalMinor, payoutPercent) / 100;
+    }
+
+    /**
+     * Returns each stake's payout, in the same order as the stakes. All stakes are paid nothing if they add up to zero.
+     */
+    public static long[] allocate(long pot, long[] stakes) {
+        long[] payouts = new long[stakes.length];
+        allocate(pot, stakes, payouts, new long[stakes.length], new int[stakes.length]);
+        return payouts;
+    }
+
+    /**
+     * Same as {@link #allocate(long, long[])} but writes into caller-owned arrays, which must be at
+     * least as long as the stakes, so repeated calls allocate nothing.
+     */
+    public static void allocate(long pot, long[] stakes, long[] payouts, long[] remainders, int[] heap) {
+        if (pot < 0) {
+            throw new IllegalArgumentException("Pot must not be negative");
+        }
+        int count = stakes.length;
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            if (stakes[i] < 0) {
+                throw new IllegalArgumentException("Stakes must not be negative");
+            }
+            total = Math.addExact(total, stakes[i]);
+        }
+        if (total == 0) {
+            Arrays.fill(payouts, 0, count, 0L);
+            return;
+        }
+
+        long allocated = 0;
+        for (int i = 0; i < count; i++) {
+            payouts[i] = floorShare(pot, stakes[i], total);
+            remainders[i] = remainder(pot, stakes[i], total);
+            allocated += payouts[i];
+        }
+
+        // Hand out the leftover kobo by popping the largest remainders off a max-heap.
+        long leftover = pot - allocated;
+        for (int i = 0; i < count; i++) {
+            heap[i] = i;
+        }
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i, count, remainders);
+        }
+        int size = count;
+        for (long k = 0; k < leftover; k++) {
+            payouts[heap[0]]++;
+            heap[0] = heap[--size];
+            siftDown(heap, 0, size, remainders);
+        }
+    }
+
+    /**
+     * A stake's share of the pot rounded down: floor(pot * stake / total).
+     */
+    public static long floorShare(long pot, long stake, long total) {
+        long product = stake * pot;
+        if (fitsInLong(stake, pot, product)) {
+            return product / total;
+        }
+        return wideProduct(stake, pot).divide(BigInteger.valueOf(total)).longValueExact();
+    }
+
+    /**
+     * What rounding down left of a stake's share, in 1/total kobo: pot * stake mod total. The
+     * leftover kobo go to the largest of these.
+     */
+    public static long remainder(long pot, long stake, long total) {
+        long product = stake * pot;
+        if (fitsInLong(stake, pot, product)) {
+            return product % total;
+        }
+        return wideProduct(stake, pot).mod(BigInteger.valueOf(total)).longValueExact();
+    }
+
+    // stake * pot only outgrows a long for pools of tens of millions of naira.
+    private static boolean fitsInLong(long stake, long pot, long product) {
+        return Math.multiplyHigh(stake, pot) == 0 && product >= 0;
+    }
+
+    private static BigInteger wideProduct(long stake, long pot) {
+        return BigInteger.valueOf(stake).multiply(BigInteger.valueOf(pot));
+    }
+
+    private static void siftDown(int[] heap, int index, int size, long[] remainders) {
+        int item = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && ranksBefore(heap[child + 1], heap[child], remainders)) {
+                child++;
+            }
+            if (!ranksBefore(heap[child], item, remainders)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = item;
+    }
+
+    private static boolean ranksBefore(int a, int b, long[] remainders) {
+        return remainders[a] > remainders[b] || (remainders[a] == remainders[b] && a < b);
+    }
+}
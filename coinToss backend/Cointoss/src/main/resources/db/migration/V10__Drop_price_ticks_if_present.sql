@@ -0,0 +1,3 @@
+-- A database migrated while V6 and V7 were briefly squashed never ran the original V7; this drops
+-- the table there too. Everywhere else V7 already dropped it and this does nothing.
+DROP TABLE IF EXISTS price_ticks;
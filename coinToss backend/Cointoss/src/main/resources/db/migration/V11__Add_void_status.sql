@@ -0,0 +1,9 @@
+-- Pools that get no settlement price before their deadline are voided and every bet refunded,
+-- instead of waiting in RETRY forever.
+ALTER TABLE betting_pools DROP CONSTRAINT IF EXISTS betting_pools_status_check;
+ALTER TABLE betting_pools ADD CONSTRAINT betting_pools_status_check
+    CHECK (status IN ('OPEN', 'LOCKED', 'SETTLED', 'RETRY', 'VOID'));
+
+ALTER TABLE bets DROP CONSTRAINT IF EXISTS bets_status_check;
+ALTER TABLE bets ADD CONSTRAINT bets_status_check
+    CHECK (status IN ('PENDING', 'WON', 'LOST', 'REFUNDED'));
@@ -0,0 +1,3 @@
+-- Settlement reads and updates all bets of a pool at once, and credits winners by user.
+CREATE INDEX idx_bets_pool_id_status ON bets(pool_id, status);
+CREATE INDEX idx_bets_user_id ON bets(user_id);
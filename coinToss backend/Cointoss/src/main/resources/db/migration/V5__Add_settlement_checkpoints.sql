@@ -0,0 +1,23 @@
+-- Progress of pools being settled in chunks, so a restarted instance resumes where the last one stopped.
+CREATE TABLE settlement_checkpoints (
+    pool_id BIGINT PRIMARY KEY,
+    winning_direction VARCHAR(4) NOT NULL CHECK (winning_direction IN ('UP', 'DOWN')),
+    end_price DECIMAL(10, 2) NOT NULL,
+    total_up_pool DECIMAL(14, 2) NOT NULL,
+    total_down_pool DECIMAL(14, 2) NOT NULL,
+    bet_count BIGINT NOT NULL,
+    pot BIGINT NOT NULL,
+    winning_total BIGINT NOT NULL,
+    leftover BIGINT NOT NULL,
+    threshold_remainder BIGINT,
+    threshold_bet_id BIGINT,
+    last_bet_id BIGINT NOT NULL DEFAULT 0,
+    settled_bets BIGINT NOT NULL DEFAULT 0,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (pool_id) REFERENCES betting_pools(id) ON DELETE CASCADE
+);
+
+-- A pool's totals can outgrow any single bet by far; widen them so large promotional pools fit.
+ALTER TABLE betting_pools ALTER COLUMN total_up_pool TYPE DECIMAL(14, 2);
+ALTER TABLE betting_pools ALTER COLUMN total_down_pool TYPE DECIMAL(14, 2);
@@ -0,0 +1,13 @@
+-- Prices captured ahead of time, so pools open and settle on a recorded tick instead of a live API call.
+CREATE TABLE price_ticks (
+    id BIGSERIAL PRIMARY KEY,
+    asset_pair VARCHAR(50) NOT NULL,
+    price DECIMAL(18, 8) NOT NULL,
+    captured_at TIMESTAMPTZ NOT NULL
+);
+CREATE INDEX idx_price_ticks_pair_time ON price_ticks(asset_pair, captured_at);
+
+-- Pools with no trustworthy price at their settlement time wait in RETRY instead of settling.
+ALTER TABLE betting_pools DROP CONSTRAINT IF EXISTS betting_pools_status_check;
+ALTER TABLE betting_pools ADD CONSTRAINT betting_pools_status_check
+    CHECK (status IN ('OPEN', 'LOCKED', 'SETTLED', 'RETRY'));
@@ -0,0 +1,2 @@
+-- Price ticks now live in memory-mapped ring files on each instance (see PriceTickStore).
+DROP TABLE IF EXISTS price_ticks;
@@ -0,0 +1,2 @@
+-- The current pool and the next pool's open time are looked up per market.
+CREATE INDEX idx_betting_pools_asset_pair_status ON betting_pools(asset_pair, status, open_time);
@@ -0,0 +1,6 @@
+-- Leases that keep one node driving the game cycle and one node settling each pool.
+CREATE TABLE cluster_leases (
+    name VARCHAR(100) PRIMARY KEY,
+    owner VARCHAR(100) NOT NULL,
+    expires_at BIGINT NOT NULL
+);
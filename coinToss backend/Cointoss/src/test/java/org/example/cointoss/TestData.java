@@ -0,0 +1,80 @@
+package org.example.cointoss;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Inserts the users, wallets and pools tests bet against. Ids are read back from each insert's
+ * generated key rather than as the highest id, which could belong to a row another test inserted
+ * into the shared database in the meantime.
+ */
+@Component
+public class TestData {
+    private static final BigDecimal START_PRICE = new BigDecimal("65000.00");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TestData(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Long createUserWithWallet() {
+        return createUserWithWallet(new BigDecimal("100.00"));
+    }
+
+    public Long createUserWithWallet(BigDecimal balance) {
+        Long userId = insert("INSERT INTO users (email, first_name, last_name, password, role, created_at) VALUES (?, 'Test', 'User', 'unused', 'USER', ?)",
+                UUID.randomUUID() + "@example.com", OffsetDateTime.now().toLocalDateTime());
+        jdbcTemplate.update("INSERT INTO wallets (user_id, balance, currency, created_at) VALUES (?, ?, 'NGN', ?)",
+                userId, balance, OffsetDateTime.now());
+        return userId;
+    }
+
+    public List<Long> createUsersWithWallets(int count) {
+        List<Long> userIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            userIds.add(createUserWithWallet());
+        }
+        return userIds;
+    }
+
+    /**
+     * A BTC/USDT pool taking bets for the next five minutes.
+     */
+    public Long createOpenPool() {
+        return createPool("BTC/USDT", "OPEN", OffsetDateTime.now().plusMinutes(10));
+    }
+
+    public Long createPool(String assetPair, String status, OffsetDateTime settlementTime) {
+        return createPool(assetPair, status, START_PRICE, settlementTime);
+    }
+
+    /**
+     * A pool that opened ten minutes and locked five minutes before its settlement time.
+     */
+    public Long createPool(String assetPair, String status, BigDecimal startPrice, OffsetDateTime settlementTime) {
+        return insert("INSERT INTO betting_pools (asset_pair, status, start_price, total_up_pool, total_down_pool, open_time, lock_time, settlement_time) "
+                        + "VALUES (?, ?, ?, 0, 0, ?, ?, ?)",
+                assetPair, status, startPrice, settlementTime.minusMinutes(10), settlementTime.minusMinutes(5), settlementTime);
+    }
+
+    private Long insert(String sql, Object... args) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, new String[]{"id"});
+            new ArgumentPreparedStatementSetter(args).setValues(ps);
+            return ps;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+}
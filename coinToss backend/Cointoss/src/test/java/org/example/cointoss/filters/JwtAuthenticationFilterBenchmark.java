@@ -0,0 +1,99 @@
+package org.example.cointoss.filters;
+
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cointoss.config.JwtConfig;
+import org.example.cointoss.entities.Role;
+import org.example.cointoss.entities.User;
+import org.example.cointoss.service.JwtService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@link JwtAuthenticationFilter} costs a request carrying a bearer token: with the
+ * verified-token cache, without it, and the parser built per request as it used to be.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.example.cointoss.filters.JwtAuthenticationFilterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+    private JwtConfig config;
+    private JwtAuthenticationFilter cachedFilter;
+    private JwtAuthenticationFilter uncachedFilter;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        config = new JwtConfig();
+        config.setSecret("benchmarkSecretKey12345678901234567890123456");
+        config.setAccessTokenExpiration(3600);
+        JwtService cached = new JwtService(config, new SimpleMeterRegistry());
+        JwtConfig uncachedConfig = new JwtConfig();
+        uncachedConfig.setSecret(config.getSecret());
+        uncachedConfig.setCacheSize(0);
+        cachedFilter = new JwtAuthenticationFilter(cached);
+        uncachedFilter = new JwtAuthenticationFilter(new JwtService(uncachedConfig, new SimpleMeterRegistry()));
+
+        User user = new User();
+        user.setId(42L);
+        user.setEmail("bench@example.com");
+        user.setFirstName("Bench");
+        user.setLastName("Mark");
+        user.setRole(Role.USER);
+        token = cached.generateAccessToken(user).toString();
+    }
+
+    @Benchmark
+    public Object cachedToken() throws Exception {
+        return filter(cachedFilter);
+    }
+
+    @Benchmark
+    public Object verifiedEveryRequest() throws Exception {
+        return filter(uncachedFilter);
+    }
+
+    @Benchmark
+    public Object parserPerRequest() {
+        return Jwts.parser().verifyWith(config.getSecretKey()).build().parseSignedClaims(token).getPayload();
+    }
+
+    private Object filter(JwtAuthenticationFilter filter) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/wallets/me");
+        request.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        SecurityContextHolder.clearContext();
+        return principal;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtAuthenticationFilterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.cointoss.filters;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cointoss.config.RateLimitConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RateLimitConfig config = new RateLimitConfig();
+    private final AtomicLong now = new AtomicLong(-TimeUnit.SECONDS.toNanos(100));
+    private final RateLimitFilter filter = new RateLimitFilter(config, meterRegistry, now::get);
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void allowsABurstThenOneRequestPerRefillInterval() throws Exception {
+        config.setRoutes(List.of(new RateLimitConfig.Route("login", "POST", "/api/auth/login", 3, 1)));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(call("POST", "/api/auth/login", "10.0.0.1").getStatus()).isEqualTo(200);
+        }
+        MockHttpServletResponse rejected = call("POST", "/api/auth/login", "10.0.0.1");
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(rejected.getHeader("X-Error-Message")).isNotBlank();
+        // Another client has a budget of its own.
+        assertThat(call("POST", "/api/auth/login", "10.0.0.2").getStatus()).isEqualTo(200);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertThat(call("POST", "/api/auth/login", "10.0.0.1").getStatus()).isEqualTo(200);
+        assertThat(call("POST", "/api/auth/login", "10.0.0.1").getStatus()).isEqualTo(429);
+        assertThat(meterRegistry.get("cointoss.ratelimit.rejected").tag("route", "login").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void keysSignedInUsersByIdAndLeavesOtherRoutesAlone() throws Exception {
+        config.setRoutes(List.of(new RateLimitConfig.Route("bets", "POST", "/api/bets", 1, 1)));
+        signIn(7L);
+
+        assertThat(call("POST", "/api/bets", "10.0.0.1").getStatus()).isEqualTo(200);
+        // Same user from another address shares the budget.
+        assertThat(call("POST", "/api/bets", "10.0.0.2").getStatus()).isEqualTo(429);
+        signIn(8L);
+        assertThat(call("POST", "/api/bets", "10.0.0.1").getStatus()).isEqualTo(200);
+
+        assertThat(call("GET", "/api/bets", "10.0.0.1").getStatus()).isEqualTo(200);
+        assertThat(call("POST", "/api/wallets/deposit", "10.0.0.1").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void reportsTheWaitInWholeSecondsRoundedUp() throws Exception {
+        config.setRoutes(List.of(new RateLimitConfig.Route("login", "POST", "/api/auth/login", 1, 0.2)));
+
+        call("POST", "/api/auth/login", "10.0.0.1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertThat(call("POST", "/api/auth/login", "10.0.0.1").getHeader("Retry-After")).isEqualTo("5");
+    }
+
+    @Test
+    void evictsOnlyBucketsThatHaveRefilled() throws Exception {
+        config.setRoutes(List.of(new RateLimitConfig.Route("login", "POST", "/api/auth/login", 2, 1)));
+        call("POST", "/api/auth/login", "10.0.0.1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        call("POST", "/api/auth/login", "10.0.0.2");
+        assertThat(meterRegistry.get("cointoss.ratelimit.buckets").gauge().value()).isEqualTo(2);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        filter.evictFullBuckets();
+
+        assertThat(meterRegistry.get("cointoss.ratelimit.buckets").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void passesEverythingThroughWhenDisabled() throws Exception {
+        config.setRoutes(List.of(new RateLimitConfig.Route("login", "POST", "/api/auth/login", 1, 1)));
+        config.setEnabled(false);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(call("POST", "/api/auth/login", "10.0.0.1").getStatus()).isEqualTo(200);
+        }
+    }
+
+    private MockHttpServletResponse call(String method, String path, String remoteAddr) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr(remoteAddr);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static void signIn(Long userId) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(userId, null, List.of()));
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.cointoss.repositories;
+
+import org.example.cointoss.entities.Role;
+import org.example.cointoss.entities.User;
+import org.example.cointoss.entities.Wallet;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class WalletRepositoryConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 25;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Test
+    void concurrentDebitsNeverOverdrawTheWallet() throws Exception {
+        Long userId = createUserWithWallet(new BigDecimal("100.00"));
+
+        List<Integer> results = hammer(() -> walletRepository.debit(userId, new BigDecimal("1.00")));
+
+        // 400 attempts against a balance of 100: exactly 100 succeed and nothing is lost.
+        assertThat(results.stream().mapToInt(Integer::intValue).sum()).isEqualTo(100);
+        assertThat(balanceOf(userId)).isEqualByComparingTo("0.00");
+    }
+
+    @Test
+    void concurrentCreditsAndDebitsAreNotLost() throws Exception {
+        Long userId = createUserWithWallet(new BigDecimal("100.00"));
+
+        List<Integer> results = hammer(() -> {
+            walletRepository.credit(userId, new BigDecimal("2.50"));
+            return walletRepository.debit(userId, new BigDecimal("1.00"));
+        });
+
+        int debits = results.stream().mapToInt(Integer::intValue).sum();
+        BigDecimal credited = new BigDecimal("2.50").multiply(BigDecimal.valueOf(THREADS * ATTEMPTS_PER_THREAD));
+        assertThat(debits).isEqualTo(THREADS * ATTEMPTS_PER_THREAD);
+        assertThat(balanceOf(userId)).isEqualByComparingTo(
+                new BigDecimal("100.00").add(credited).subtract(BigDecimal.valueOf(debits)));
+    }
+
+    private List<Integer> hammer(Callable<Integer> operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS * ATTEMPTS_PER_THREAD; i++) {
+                futures.add(executor.submit(operation));
+            }
+            List<Integer> results = new ArrayList<>();
+            for (Future<Integer> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Long createUserWithWallet(BigDecimal balance) {
+        User user = new User();
+        user.setEmail(UUID.randomUUID() + "@example.com");
+        user.setFirstName("Wallet");
+        user.setLastName("Test");
+        user.setPassword("unused");
+        user.setRole(Role.USER);
+
+        Wallet wallet = new Wallet();
+        wallet.setBalance(balance);
+        wallet.setUser(user);
+        user.setWallet(wallet);
+        return userRepository.save(user).getId();
+    }
+
+    private BigDecimal balanceOf(Long userId) {
+        return walletRepository.findByUserId(userId).orElseThrow().getBalance();
+    }
+}
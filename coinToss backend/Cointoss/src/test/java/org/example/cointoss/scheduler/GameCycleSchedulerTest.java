@@ -0,0 +1,147 @@
+package org.example.cointoss.scheduler;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.cointoss.TestData;
+import org.example.cointoss.entities.BettingPools;
+import org.example.cointoss.repositories.BettingPoolsRepository;
+import org.example.cointoss.service.PriceTickStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        // Its own database, since closing the context drops the schema.
+        "spring.datasource.url=jdbc:h2:mem:game-cycle-scheduler-test",
+        "cointoss.pools.retry-delay-ms=100",
+        "cointoss.pools.markets[0].asset-pair=SOL/USDT",
+        "cointoss.pools.markets[0].betting-seconds=30",
+        "cointoss.pools.markets[0].round-seconds=60",
+        "cointoss.pools.markets[1].asset-pair=XRP/USDT",
+        "cointoss.pools.markets[1].betting-seconds=1",
+        "cointoss.pools.markets[1].round-seconds=2"
+})
+// The scheduler keeps opening pools for its markets, so the context must not be reused by other tests.
+@DirtiesContext
+class GameCycleSchedulerTest {
+
+    @Autowired
+    private BettingPoolsRepository bettingPoolsRepository;
+
+    @Autowired
+    private TestData testData;
+
+    @Autowired
+    private PriceTickStore priceTickStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private GameCycleScheduler gameCycleScheduler;
+
+    @Test
+    void opensLocksAndSettlesEachMarketOnItsOwnDeadlines() throws Exception {
+        // Neither market has a price yet, so their first pools wait on the retry delay until one is captured.
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (settledCount("XRP/USDT") == 0 && System.currentTimeMillis() < deadline) {
+            priceTickStore.record("SOL/USDT", new BigDecimal("150.00"), OffsetDateTime.now());
+            priceTickStore.record("XRP/USDT", new BigDecimal("0.60"), OffsetDateTime.now());
+            Thread.sleep(50);
+        }
+
+        BettingPools xrp = bettingPoolsRepository.findAll().stream()
+                .filter(pool -> "XRP/USDT".equals(pool.getAssetPair()) && "SETTLED".equals(pool.getStatus()))
+                .findFirst().orElseThrow();
+        assertThat(Duration.between(xrp.getOpenTime(), xrp.getLockTime())).isEqualTo(Duration.ofSeconds(1));
+        assertThat(xrp.getEndPrice()).isEqualByComparingTo("0.60");
+        // The next XRP pool opened when the first one's round ended; SOL's round is far from over.
+        assertThat(bettingPoolsRepository.findFirstByAssetPairAndStatusOrderByOpenTimeDesc("XRP/USDT", "OPEN")).isPresent();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM betting_pools WHERE asset_pair = 'SOL/USDT'", Integer.class)).isEqualTo(1);
+
+        Timer lockLag = meterRegistry.get("cointoss.scheduler.lag").tag("event", "lock").timer();
+        assertThat(lockLag.count()).isPositive();
+        assertThat(lockLag.max(TimeUnit.MILLISECONDS)).isLessThan(1000);
+    }
+
+    @Test
+    void leavesAPoolToTheNodesThatCapturedItsSettlementPrice() throws Exception {
+        OffsetDateTime settlementTime = OffsetDateTime.now().minusSeconds(1);
+        Long poolId = testData.createPool("ADA/USDT", "LOCKED", new BigDecimal("0.40"), settlementTime);
+        double retriedSettlements = settlements("retry");
+
+        // This node was not capturing ADA at the settlement time, so it must not claim the pool.
+        gameCycleScheduler.rebuild();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!"RETRY".equals(poolStatus(poolId)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(poolStatus(poolId)).isEqualTo("RETRY");
+        assertThat(settlements("retry")).isEqualTo(retriedSettlements);
+
+        // Once it holds the tick it settles the pool on the next retry.
+        priceTickStore.record("ADA/USDT", new BigDecimal("0.45"), settlementTime);
+        deadline = System.currentTimeMillis() + 5_000;
+        while (!"SETTLED".equals(poolStatus(poolId)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(poolStatus(poolId)).isEqualTo("SETTLED");
+    }
+
+    @Test
+    void voidsAPoolNoNodeCanSettleOnceItsDeadlinePasses() throws Exception {
+        // Well past the default ten-minute deadline, and no node ever captured DOT.
+        Long userId = testData.createUserWithWallet(new BigDecimal("85.00"));
+        Long poolId = testData.createPool("DOT/USDT", "LOCKED", new BigDecimal("7.00"), OffsetDateTime.now().minusMinutes(20));
+        insertBet(userId, poolId, "10.00", "UP");
+        insertBet(userId, poolId, "5.00", "DOWN");
+        double voidedSettlements = settlements("voided");
+
+        gameCycleScheduler.rebuild();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!"VOID".equals(poolStatus(poolId)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertThat(poolStatus(poolId)).isEqualTo("VOID");
+        assertThat(jdbcTemplate.queryForList("SELECT status FROM bets WHERE pool_id = ?", String.class, poolId))
+                .containsOnly("REFUNDED");
+        assertThat(jdbcTemplate.queryForObject("SELECT SUM(payout) FROM bets WHERE pool_id = ?", BigDecimal.class, poolId))
+                .isEqualByComparingTo("15.00");
+        assertThat(jdbcTemplate.queryForObject("SELECT balance FROM wallets WHERE user_id = ?", BigDecimal.class, userId))
+                .isEqualByComparingTo("100.00");
+        assertThat(settlements("voided")).isEqualTo(voidedSettlements + 1);
+    }
+
+    private void insertBet(Long userId, Long poolId, String amount, String direction) {
+        jdbcTemplate.update("INSERT INTO bets (user_id, pool_id, amount, direction, status, created_at) VALUES (?, ?, ?, ?, 'PENDING', ?)",
+                userId, poolId, new BigDecimal(amount), direction, OffsetDateTime.now());
+    }
+
+    private String poolStatus(Long poolId) {
+        return jdbcTemplate.queryForObject("SELECT status FROM betting_pools WHERE id = ?", String.class, poolId);
+    }
+
+    private double settlements(String outcome) {
+        Timer timer = meterRegistry.find("cointoss.settlement.pool").tag("outcome", outcome).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private int settledCount(String assetPair) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM betting_pools WHERE asset_pair = ? AND status = 'SETTLED'", Integer.class, assetPair);
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cointoss.TestData;
+import org.example.cointoss.config.BettingConfig;
+import org.example.cointoss.config.BroadcastConfig;
+import org.example.cointoss.repositories.BettingPoolsRepository;
+import org.example.cointoss.repositories.WalletRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class BetIngestionPipelineTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestData testData;
+
+    @Autowired
+    private OpenPoolCache openPoolCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private BettingPoolsRepository bettingPoolsRepository;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private ClusterFanout clusterFanout;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BetIngestionPipeline pipeline;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pipeline.stop();
+    }
+
+    @Test
+    void aBetStaysAcceptedWhenTheLedgerAndBroadcastFailAfterTheCommit() throws Exception {
+        PoolLedger failingLedger = new PoolLedger(bettingPoolsRepository) {
+            @Override
+            public void record(Long poolId, String direction, long amountMinor) {
+                throw new IllegalStateException("ledger down");
+            }
+        };
+        PoolUpdateBroadcaster failingBroadcaster = new PoolUpdateBroadcaster(new BroadcastConfig(), null,
+                failingLedger, openPoolCache, meterRegistry) {
+            @Override
+            public void broadcastPoolUpdate(Long poolId) {
+                throw new IllegalStateException("broker down");
+            }
+        };
+        pipeline = new BetIngestionPipeline(new BettingConfig(), jdbcTemplate, openPoolCache, transactionManager,
+                failingLedger, failingBroadcaster, clusterFanout, walletRepository, meterRegistry);
+        pipeline.start();
+        Long userId = testData.createUserWithWallet();
+        Long poolId = testData.createOpenPool();
+
+        BetIngestionPipeline.PendingBet bet = pipeline.submit(userId, poolId, new BigDecimal("5.00"), "UP");
+
+        // Completes normally: the bet was debited and recorded, so the client must not retry it.
+        bet.getResult().get(5, TimeUnit.SECONDS);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM bets WHERE pool_id = ?", Long.class, poolId)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT balance FROM wallets WHERE user_id = ?", BigDecimal.class, userId))
+                .isEqualByComparingTo("95.00");
+        // The post-commit steps run after the result completes.
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (postCommitFailures("broadcast") == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(postCommitFailures("ledger")).isEqualTo(1);
+        assertThat(postCommitFailures("broadcast")).isEqualTo(1);
+    }
+
+    private double postCommitFailures(String step) {
+        return meterRegistry.get("cointoss.bets.post_commit.failures").tag("step", step).counter().count();
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.example.cointoss.TestData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Exports metrics as in production, so the Prometheus scrape can be checked.
+@SpringBootTest
+@AutoConfigureObservability
+class BetPlacementMetricsTest {
+
+    @Autowired
+    private BettingService bettingService;
+
+    @Autowired
+    private TestData testData;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PrometheusMeterRegistry prometheusMeterRegistry;
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void timesAcceptedBetsAndCountsRejectionsByReason() {
+        Long poolId = testData.createOpenPool();
+        signIn(testData.createUserWithWallet());
+        long accepted = placed("accepted", "none").count();
+        long insufficientFunds = placed("rejected", "insufficient_funds").count();
+        long invalidDirection = placed("rejected", "invalid_direction").count();
+        long poolClosed = placed("rejected", "pool_closed").count();
+
+        bettingService.placeBet(poolId, new BigDecimal("60.00"), "UP");
+        // The wallet started with 100.00.
+        assertThatThrownBy(() -> bettingService.placeBet(poolId, new BigDecimal("60.00"), "UP"))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> bettingService.placeBet(poolId, new BigDecimal("1.00"), "SIDEWAYS"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> bettingService.placeBet(-1L, new BigDecimal("1.00"), "UP"))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(placed("accepted", "none").count()).isEqualTo(accepted + 1);
+        assertThat(placed("rejected", "insufficient_funds").count()).isEqualTo(insufficientFunds + 1);
+        assertThat(placed("rejected", "invalid_direction").count()).isEqualTo(invalidDirection + 1);
+        assertThat(placed("rejected", "pool_closed").count()).isEqualTo(poolClosed + 1);
+        // Published with histogram buckets, so percentiles can be aggregated across nodes.
+        assertThat(prometheusMeterRegistry.scrape())
+                .contains("cointoss_bets_placed_seconds_bucket{outcome=\"accepted\",reason=\"none\",le=");
+    }
+
+    @Test
+    void breaksAnAcceptedBetDownByStage() {
+        Long poolId = testData.createOpenPool();
+        signIn(testData.createUserWithWallet());
+        long committed = meterRegistry.get("cointoss.bets.stage").tag("stage", "commit").timer().count();
+        BetTimings timings = new BetTimings();
+
+        bettingService.placeBet(poolId, new BigDecimal("5.00"), "DOWN", timings);
+
+        assertThat(timings.serverTiming()).matches(
+                "auth;dur=[0-9.]+, validate;dur=[0-9.]+, enqueue;dur=[0-9.]+, queue;dur=[0-9.]+, "
+                        + "commit;dur=[0-9.]+, wake;dur=[0-9.]+, total;dur=[0-9.]+");
+        assertThat(meterRegistry.get("cointoss.bets.stage").tag("stage", "commit").timer().count()).isEqualTo(committed + 1);
+    }
+
+    @Test
+    void leavesOutTheStagesARejectedBetNeverReached() {
+        signIn(testData.createUserWithWallet());
+        BetTimings timings = new BetTimings();
+
+        assertThatThrownBy(() -> bettingService.placeBet(-1L, new BigDecimal("1.00"), "UP", timings))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(timings.serverTiming()).matches("auth;dur=[0-9.]+, total;dur=[0-9.]+");
+    }
+
+    private Timer placed(String outcome, String reason) {
+        return meterRegistry.get("cointoss.bets.placed").tags("outcome", outcome, "reason", reason).timer();
+    }
+
+    private static void signIn(Long userId) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(userId, null, List.of()));
+    }
+}
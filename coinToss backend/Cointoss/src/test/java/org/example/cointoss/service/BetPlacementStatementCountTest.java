@@ -0,0 +1,167 @@
+package org.example.cointoss.service;
+
+import org.example.cointoss.TestData;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Counts the SQL statements bet placement sends to the database, on the request threads and on
+ * the ingestion writer, by wrapping the DataSource.
+ */
+@SpringBootTest(properties = {
+        "cointoss.betting.batch-size=50",
+        "cointoss.betting.max-linger-ms=1000"
+})
+class BetPlacementStatementCountTest {
+    private static final int BETS = 50;
+    private static final String BETTOR_THREAD = "bettor-";
+    private static final String INGESTION_THREAD = "bet-ingestion";
+
+    static final AtomicInteger bettorStatements = new AtomicInteger();
+    static final AtomicInteger ingestionStatements = new AtomicInteger();
+
+    @Autowired
+    private BettingService bettingService;
+
+    @Autowired
+    private TestData testData;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PoolLedger poolLedger;
+
+    @Test
+    void aBatchOfBetsCostsTwoStatementsInTotal() throws Exception {
+        Long poolId = testData.createOpenPool();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i <= BETS; i++) {
+            userIds.add(testData.createUserWithWallet());
+        }
+
+        // Warm-up bet: the first bet on a pool loads its betting window and seeds the ledger.
+        placeBets(poolId, userIds.subList(0, 1));
+        // The ledger is seeded just after the bet's caller is told it was accepted.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (poolLedger.find(poolId).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        bettorStatements.set(0);
+        ingestionStatements.set(0);
+
+        placeBets(poolId, userIds.subList(1, BETS + 1));
+
+        assertThat(bettorStatements.get()).isZero();
+        // One batched wallet debit and one batched bet insert for all 50 bets.
+        assertThat(ingestionStatements.get()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM bets WHERE pool_id = ?", Long.class, poolId))
+                .isEqualTo(BETS + 1L);
+    }
+
+    private void placeBets(Long poolId, List<Long> userIds) throws Exception {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(userIds.size(),
+                runnable -> new Thread(runnable, BETTOR_THREAD + threadNumber.incrementAndGet()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Long userId : userIds) {
+                futures.add(executor.submit(() -> {
+                    SecurityContextHolder.getContext().setAuthentication(
+                            new UsernamePasswordAuthenticationToken(userId, null, List.of()));
+                    try {
+                        bettingService.placeBet(poolId, new BigDecimal("5.00"), "up");
+                    } finally {
+                        SecurityContextHolder.clearContext();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @TestConfiguration
+    static class StatementCountingConfig {
+        @Bean
+        static BeanPostProcessor statementCountingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource && !(bean instanceof CountingDataSource)) {
+                        return new CountingDataSource(dataSource);
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    static class CountingDataSource extends DelegatingDataSource {
+        CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return proxy(Connection.class, super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return proxy(Connection.class, super.getConnection(username, password));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, T target) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                if (target instanceof Statement && method.getName().startsWith("execute")) {
+                    String thread = Thread.currentThread().getName();
+                    if (thread.startsWith(BETTOR_THREAD)) {
+                        bettorStatements.incrementAndGet();
+                    } else if (thread.equals(INGESTION_THREAD)) {
+                        ingestionStatements.incrementAndGet();
+                    }
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+                // Statements handed out by the connection are wrapped too, so their executions are counted.
+                if (result instanceof Statement statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                    return proxy((Class<Statement>) method.getReturnType(), statement);
+                }
+                return result;
+            });
+        }
+    }
+}
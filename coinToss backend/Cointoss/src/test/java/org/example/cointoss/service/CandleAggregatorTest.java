@@ -0,0 +1,113 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cointoss.config.CandleConfig;
+import org.example.cointoss.config.ClusterConfig;
+import org.example.cointoss.config.PoolConfig;
+import org.example.cointoss.config.PriceConfig;
+import org.example.cointoss.dtos.CandleDto;
+import org.example.cointoss.dtos.PriceUpdateDto;
+import org.example.cointoss.scheduler.LeaderElection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandleAggregatorTest {
+
+    // 2026-01-01T00:00:00Z, on a 5 minute boundary.
+    private static final long START = 1_767_225_600_000L;
+
+    private final List<Message<?>> sent = new ArrayList<>();
+    private CandleAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        CandleConfig config = new CandleConfig();
+        config.setHistory(3);
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+        LeaderElection leaderElection = new LeaderElection(new ClusterConfig(), null, new SimpleMeterRegistry()) {
+            @Override
+            public boolean isLeader() {
+                return true;
+            }
+        };
+        aggregator = new CandleAggregator(config, new PriceConfig(), new PoolConfig(), null, new LocalFanout(template, null), leaderElection, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void buildsOhlcCandlesAndRollsThemOverPerInterval() {
+        aggregator.onTick("BTC/USDT", START + 100, new BigDecimal("100"));
+        aggregator.onTick("BTC/USDT", START + 400, new BigDecimal("105"));
+        aggregator.onTick("BTC/USDT", START + 700, new BigDecimal("98"));
+        aggregator.onTick("BTC/USDT", START + 1_200, new BigDecimal("101"));
+        aggregator.onTick("BTC/USDT", START + 61_000, new BigDecimal("110"));
+
+        List<CandleDto> seconds = aggregator.snapshot("BTC/USDT", CandleAggregator.Interval.ONE_SECOND, 10);
+        assertThat(seconds).hasSize(3);
+        assertCandle(seconds.get(0), "100", "105", "98", "98", 3);
+        assertCandle(seconds.get(1), "101", "101", "101", "101", 1);
+        assertThat(seconds.get(2).openTime().toInstant().toEpochMilli()).isEqualTo(START + 61_000);
+
+        List<CandleDto> minutes = aggregator.snapshot("BTC/USDT", CandleAggregator.Interval.ONE_MINUTE, 10);
+        assertThat(minutes).hasSize(2);
+        assertCandle(minutes.get(0), "100", "105", "98", "101", 4);
+
+        List<CandleDto> fiveMinutes = aggregator.snapshot("BTC/USDT", CandleAggregator.Interval.FIVE_MINUTES, 10);
+        assertThat(fiveMinutes).hasSize(1);
+        assertCandle(fiveMinutes.get(0), "100", "110", "98", "110", 5);
+    }
+
+    @Test
+    void keepsOnlyTheConfiguredHistoryAndHonoursTheLimit() {
+        for (int i = 0; i < 10; i++) {
+            aggregator.onTick("BTC/USDT", START + i * 1_000L, BigDecimal.valueOf(i));
+        }
+
+        List<CandleDto> seconds = aggregator.snapshot("BTC/USDT", CandleAggregator.Interval.ONE_SECOND, 100);
+        // Three completed candles plus the one in progress.
+        assertThat(seconds).extracting(CandleDto::close)
+                .containsExactly(BigDecimal.valueOf(6), BigDecimal.valueOf(7), BigDecimal.valueOf(8), BigDecimal.valueOf(9));
+        assertThat(aggregator.snapshot("BTC/USDT", CandleAggregator.Interval.ONE_SECOND, 2))
+                .extracting(CandleDto::close)
+                .containsExactly(BigDecimal.valueOf(8), BigDecimal.valueOf(9));
+        assertThat(aggregator.snapshot("ETH/USDT", CandleAggregator.Interval.ONE_SECOND, 2)).isEmpty();
+    }
+
+    @Test
+    void publishesOnlyTheLatestStateOfPairsThatChanged() {
+        for (int i = 0; i < 50; i++) {
+            aggregator.onTick("BTC/USDT", START + i * 10L, BigDecimal.valueOf(100 + i));
+        }
+
+        aggregator.publish();
+        aggregator.publish();
+
+        assertThat(sent).hasSize(1);
+        Message<?> message = sent.get(0);
+        assertThat(SimpMessageHeaderAccessor.getDestination(message.getHeaders())).isEqualTo("/topic/price/BTC-USDT");
+        PriceUpdateDto update = (PriceUpdateDto) message.getPayload();
+        assertThat(update.price()).isEqualByComparingTo("149");
+        assertThat(update.candles().get("1s").ticks()).isEqualTo(50);
+        assertThat(update.candles()).containsOnlyKeys("1s", "1m", "5m");
+
+        aggregator.onTick("BTC/USDT", START + 600, new BigDecimal("150"));
+        aggregator.publish();
+        assertThat(sent).hasSize(2);
+    }
+
+    private static void assertCandle(CandleDto candle, String open, String high, String low, String close, long ticks) {
+        assertThat(candle.open()).isEqualByComparingTo(open);
+        assertThat(candle.high()).isEqualByComparingTo(high);
+        assertThat(candle.low()).isEqualByComparingTo(low);
+        assertThat(candle.close()).isEqualByComparingTo(close);
+        assertThat(candle.ticks()).isEqualTo(ticks);
+    }
+}
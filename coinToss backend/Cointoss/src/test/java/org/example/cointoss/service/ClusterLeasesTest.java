@@ -0,0 +1,60 @@
+package org.example.cointoss.service;
+
+import org.example.cointoss.config.ClusterConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class ClusterLeasesTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void onlyOneNodeHoldsALeaseUntilItIsReleased() {
+        String lease = "test:" + UUID.randomUUID();
+        ClusterLeases first = node("first");
+        ClusterLeases second = node("second");
+
+        assertThat(first.tryAcquire(lease, 60_000)).isTrue();
+        assertThat(second.tryAcquire(lease, 60_000)).isFalse();
+        // Renewing a lease this node already holds always works.
+        assertThat(first.tryAcquire(lease, 60_000)).isTrue();
+
+        second.release(lease);
+        assertThat(second.tryAcquire(lease, 60_000)).isFalse();
+
+        first.release(lease);
+        assertThat(second.tryAcquire(lease, 60_000)).isTrue();
+        assertThat(first.tryAcquire(lease, 60_000)).isFalse();
+    }
+
+    @Test
+    void anotherNodeTakesOverALeaseThatWasNotRenewed() throws Exception {
+        String lease = "test:" + UUID.randomUUID();
+        ClusterLeases first = node("first");
+        ClusterLeases second = node("second");
+
+        assertThat(first.tryAcquire(lease, 50)).isTrue();
+        assertThat(second.tryAcquire(lease, 60_000)).isFalse();
+
+        Thread.sleep(100);
+
+        assertThat(second.tryAcquire(lease, 60_000)).isTrue();
+        assertThat(first.tryAcquire(lease, 60_000)).isFalse();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT owner FROM cluster_leases WHERE name = ?", String.class, lease)).isEqualTo("second");
+    }
+
+    private ClusterLeases node(String nodeId) {
+        ClusterConfig config = new ClusterConfig();
+        config.setNodeId(nodeId);
+        return new ClusterLeases(config, jdbcTemplate);
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cointoss.config.JwtConfig;
+import org.example.cointoss.entities.Role;
+import org.example.cointoss.entities.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JwtConfig config = new JwtConfig();
+    private JwtService jwtService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        config.setSecret("testSecretKey123456789012345678901234567890");
+        config.setAccessTokenExpiration(900);
+        config.setCacheSize(2);
+        jwtService = new JwtService(config, meterRegistry);
+        user = new User();
+        user.setId(42L);
+        user.setEmail("cache@example.com");
+        user.setFirstName("Cache");
+        user.setLastName("Test");
+        user.setRole(Role.USER);
+    }
+
+    @Test
+    void verifiesATokenOnceAndServesRepeatsFromTheCache() {
+        String token = jwtService.generateAccessToken(user).toString();
+
+        Jwt first = jwtService.parseToken(token);
+        Jwt second = jwtService.parseToken(token);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.getUserId()).isEqualTo(42L);
+        // The token is handed back as it was signed, not signed again.
+        assertThat(first.toString()).isEqualTo(token);
+        assertThat(meterRegistry.get("cointoss.jwt.cache.misses").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cointoss.jwt.cache.hits").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void neverCachesATamperedToken() {
+        String token = jwtService.generateAccessToken(user).toString();
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        assertThat(jwtService.parseToken(tampered)).isNull();
+        assertThat(jwtService.parseToken(tampered)).isNull();
+        assertThat(meterRegistry.get("cointoss.jwt.cache.hits").counter().count()).isZero();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedTokenWhenFull() {
+        String first = token(1);
+        String second = token(2);
+        jwtService.parseToken(first);
+        jwtService.parseToken(second);
+        // Used again, so the second is now the least recently used.
+        jwtService.parseToken(first);
+
+        jwtService.parseToken(token(3));
+        jwtService.parseToken(first);
+        jwtService.parseToken(second);
+
+        // Misses: first, second, the third and the evicted second again. Hits: first, twice.
+        assertThat(meterRegistry.get("cointoss.jwt.cache.misses").counter().count()).isEqualTo(4);
+        assertThat(meterRegistry.get("cointoss.jwt.cache.hits").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void staysWithinItsSizeAndStillVerifiesWhatDoesNotFit() {
+        for (long id = 1; id <= 3; id++) {
+            user.setId(id);
+            String token = jwtService.generateAccessToken(user).toString();
+            assertThat(jwtService.parseToken(token).getUserId()).isEqualTo(id);
+        }
+
+        assertThat(meterRegistry.get("cointoss.jwt.cache.size").gauge().value()).isEqualTo(2);
+    }
+
+    private String token(long userId) {
+        user.setId(userId);
+        return jwtService.generateAccessToken(user).toString();
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.cointoss.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedTickRingTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsTheClosestTickByBinarySearch() throws IOException {
+        try (MappedTickRing ring = MappedTickRing.open(directory.resolve("btc.ticks"), 1000)) {
+            for (int i = 0; i < 500; i++) {
+                ring.append(10_000L + i * 1000L, i, i + 1, i + 2);
+            }
+
+            assertThat(ring.lastAt(ring.closestIndex(10_000L + 41_400L))).isEqualTo(43);
+            assertThat(ring.lastAt(ring.closestIndex(10_000L + 41_600L))).isEqualTo(44);
+            // Halfway between two ticks: the earlier one.
+            assertThat(ring.lastAt(ring.closestIndex(10_000L + 41_500L))).isEqualTo(43);
+            assertThat(ring.closestIndex(0)).isZero();
+            assertThat(ring.closestIndex(Long.MAX_VALUE)).isEqualTo(499);
+            assertThat(ring.firstIndexAtOrAfter(10_000L + 41_001L)).isEqualTo(42);
+        }
+    }
+
+    @Test
+    void overwritesTheOldestTicksOnceFull() throws IOException {
+        try (MappedTickRing ring = MappedTickRing.open(directory.resolve("btc.ticks"), 10)) {
+            for (int i = 0; i < 25; i++) {
+                ring.append(i * 1000L, MappedTickRing.NO_PRICE, MappedTickRing.NO_PRICE, i);
+            }
+
+            assertThat(ring.count()).isEqualTo(25);
+            // The slot the writer fills next is not readable, so nine ticks are left.
+            assertThat(ring.isReadable(15)).isFalse();
+            assertThat(ring.isReadable(16)).isTrue();
+            assertThat(ring.lastAt(ring.closestIndex(0))).isEqualTo(16);
+            assertThat(ring.bidAt(ring.closestIndex(0))).isEqualTo(MappedTickRing.NO_PRICE);
+        }
+    }
+
+    @Test
+    void rejectsTicksOlderThanTheNewest() throws IOException {
+        try (MappedTickRing ring = MappedTickRing.open(directory.resolve("btc.ticks"), 10)) {
+            assertThat(ring.append(2000, 0, 0, 1)).isTrue();
+            assertThat(ring.append(1000, 0, 0, 2)).isFalse();
+            assertThat(ring.append(2000, 0, 0, 3)).isTrue();
+            assertThat(ring.count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void reopensWithEveryTickAndItsOriginalCapacity() throws IOException {
+        Path file = directory.resolve("btc.ticks");
+        try (MappedTickRing ring = MappedTickRing.open(file, 100)) {
+            for (int i = 0; i < 150; i++) {
+                ring.append(i, i, i, i);
+            }
+        }
+
+        try (MappedTickRing ring = MappedTickRing.open(file, 5000)) {
+            assertThat(ring.capacity()).isEqualTo(100);
+            assertThat(ring.count()).isEqualTo(150);
+            assertThat(ring.lastAt(ring.closestIndex(120))).isEqualTo(120);
+            assertThat(ring.append(150, 1, 2, 3)).isTrue();
+            assertThat(ring.askAt(150)).isEqualTo(2);
+        }
+    }
+}
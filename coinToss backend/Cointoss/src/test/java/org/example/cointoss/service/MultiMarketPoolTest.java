@@ -0,0 +1,56 @@
+package org.example.cointoss.service;
+
+import org.example.cointoss.config.PoolConfig;
+import org.example.cointoss.entities.BettingPools;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Opening at the right moment is the scheduler's job (GameCycleSchedulerTest); this covers what
+// each market's pool is opened with.
+@SpringBootTest
+class MultiMarketPoolTest {
+
+    @Autowired
+    private BettingService bettingService;
+
+    @Autowired
+    private PriceTickStore priceTickStore;
+
+    @Test
+    void opensEachMarketOnItsOwnPriceAndRound() {
+        PoolConfig.Market sol = market("SOL/USDT", 30, 60);
+        PoolConfig.Market xrp = market("XRP/USDT", 1, 2);
+        priceTickStore.record("SOL/USDT", new BigDecimal("150.00"), OffsetDateTime.now());
+        priceTickStore.record("XRP/USDT", new BigDecimal("0.60"), OffsetDateTime.now());
+
+        BettingPools solPool = bettingService.createNextPool(sol).orElseThrow();
+        BettingPools xrpPool = bettingService.createNextPool(xrp).orElseThrow();
+
+        assertThat(solPool.getStartPrice()).isEqualByComparingTo("150.00");
+        assertThat(Duration.between(solPool.getOpenTime(), solPool.getLockTime())).isEqualTo(Duration.ofSeconds(30));
+        assertThat(Duration.between(solPool.getOpenTime(), solPool.getSettlementTime())).isEqualTo(Duration.ofSeconds(60));
+        assertThat(xrpPool.getStartPrice()).isEqualByComparingTo("0.60");
+        assertThat(Duration.between(xrpPool.getOpenTime(), xrpPool.getLockTime())).isEqualTo(Duration.ofSeconds(1));
+        assertThat(Duration.between(xrpPool.getOpenTime(), xrpPool.getSettlementTime())).isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void leavesAMarketWithoutACapturedPriceClosed() {
+        assertThat(bettingService.createNextPool(market("DOGE/USDT", 15, 30))).isEmpty();
+    }
+
+    private static PoolConfig.Market market(String assetPair, long bettingSeconds, long roundSeconds) {
+        PoolConfig.Market market = new PoolConfig.Market();
+        market.setAssetPair(assetPair);
+        market.setBettingSeconds(bettingSeconds);
+        market.setRoundSeconds(roundSeconds);
+        return market;
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.cointoss.TestData;
+import org.example.cointoss.repositories.BettingPoolsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "cointoss.settlement.workers=4",
+        "cointoss.settlement.chunk-size=16"
+})
+class ParallelSettlementTest {
+
+    @Autowired
+    private BettingService bettingService;
+
+    @Autowired
+    private TestData testData;
+
+    @Autowired
+    private BettingPoolsRepository bettingPoolsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PriceTickStore priceTickStore;
+
+    @Test
+    void settlesDuePoolsInParallelAndSendsAPoolWithoutAPriceToRetry() {
+        double retriedBefore = settledCount("retry");
+        OffsetDateTime settlementTime = OffsetDateTime.now().minusMinutes(1);
+        priceTickStore.record("BTC/USDT", new BigDecimal("66000.00"), settlementTime.plusSeconds(1));
+
+        // Every user has winning bets in every pool, so the pools credit the same wallets at once.
+        List<Long> userIds = testData.createUsersWithWallets(5);
+        List<Long> poolIds = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Long poolId = testData.createPool("BTC/USDT", "LOCKED", settlementTime);
+            for (Long userId : userIds) {
+                for (int bet = 0; bet < 10; bet++) {
+                    insertBet(userId, poolId, new BigDecimal("1.00").add(BigDecimal.valueOf(bet)), bet % 2 == 0 ? "UP" : "DOWN");
+                }
+            }
+            poolIds.add(poolId);
+        }
+        Long failingPoolId = testData.createPool("ETH/USDT", "LOCKED", settlementTime);
+        insertBet(userIds.get(0), failingPoolId, new BigDecimal("5.00"), "UP");
+        Map<Long, BigDecimal> balancesBefore = balances(userIds);
+
+        // Submitted together, the way the scheduler submits pools that come due at the same moment.
+        List<CompletableFuture<Boolean>> settlements = new ArrayList<>();
+        for (Long poolId : poolIds) {
+            settlements.add(bettingService.submitSettlement(bettingPoolsRepository.findById(poolId).orElseThrow()));
+        }
+        settlements.add(bettingService.submitSettlement(bettingPoolsRepository.findById(failingPoolId).orElseThrow()));
+        CompletableFuture.allOf(settlements.toArray(CompletableFuture[]::new)).join();
+
+        for (Long poolId : poolIds) {
+            assertThat(poolStatus(poolId)).isEqualTo("SETTLED");
+        }
+        // No ETH/USDT tick was captured, so that pool is held back rather than settled on a guess.
+        assertThat(poolStatus(failingPoolId)).isEqualTo("RETRY");
+        assertThat(settledCount("retry")).isGreaterThan(retriedBefore);
+
+        for (Long userId : userIds) {
+            BigDecimal won = jdbcTemplate.queryForObject(
+                    "SELECT SUM(payout) FROM bets WHERE user_id = ? AND status = 'WON'", BigDecimal.class, userId);
+            assertThat(balances(List.of(userId)).get(userId))
+                    .isEqualByComparingTo(balancesBefore.get(userId).add(won));
+        }
+    }
+
+    private double settledCount(String outcome) {
+        var timer = meterRegistry.find("cointoss.settlement.pool").tag("outcome", outcome).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private void insertBet(Long userId, Long poolId, BigDecimal amount, String direction) {
+        jdbcTemplate.update("INSERT INTO bets (user_id, pool_id, amount, direction, status, created_at) VALUES (?, ?, ?, ?, 'PENDING', ?)",
+                userId, poolId, amount, direction, OffsetDateTime.now());
+    }
+
+    private String poolStatus(Long poolId) {
+        return jdbcTemplate.queryForObject("SELECT status FROM betting_pools WHERE id = ?", String.class, poolId);
+    }
+
+    private Map<Long, BigDecimal> balances(List<Long> userIds) {
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        for (Long userId : userIds) {
+            balances.put(userId, jdbcTemplate.queryForObject("SELECT balance FROM wallets WHERE user_id = ?", BigDecimal.class, userId));
+        }
+        return balances;
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cointoss.config.PasswordConfig;
+import org.example.cointoss.exceptions.PasswordHashingBusyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHasherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PasswordConfig config = new PasswordConfig();
+    private PasswordHasher hasher;
+
+    @AfterEach
+    void tearDown() {
+        hasher.stop();
+    }
+
+    @Test
+    void checksPasswordsAndAsksForARehashWhenTheWorkFactorChanged() {
+        config.setBcryptStrength(4);
+        hasher = new PasswordHasher(config, new BCryptPasswordEncoder(4), meterRegistry);
+        String hash = hasher.encode("secret");
+
+        assertThat(hasher.matches("secret", hash)).isTrue();
+        assertThat(hasher.matches("wrong", hash)).isFalse();
+        assertThat(hasher.needsRehash(hash)).isFalse();
+
+        config.setBcryptStrength(5);
+        assertThat(hasher.needsRehash(hash)).isTrue();
+        assertThat(hasher.needsRehash("not a bcrypt hash")).isTrue();
+    }
+
+    @Test
+    void makesTheHashForUnknownUsersOnceUpFront() {
+        AtomicInteger encodes = new AtomicInteger();
+        PasswordEncoder countingEncoder = new BCryptPasswordEncoder(4) {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                encodes.incrementAndGet();
+                return super.encode(rawPassword);
+            }
+        };
+        hasher = new PasswordHasher(config, countingEncoder, meterRegistry);
+        assertThat(encodes).hasValue(1);
+
+        hasher.matchNobody("secret");
+        hasher.matchNobody("other");
+        assertThat(encodes).hasValue(1);
+    }
+
+    @Test
+    void turnsAwayHashesBeyondTheQueue() throws Exception {
+        config.setHashingThreads(1);
+        config.setQueueCapacity(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder slowEncoder = new BCryptPasswordEncoder(4) {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                // Only the first holds the thread; the hash for unknown users is made at construction.
+                if ("first".contentEquals(rawPassword)) {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.encode(rawPassword);
+            }
+        };
+        hasher = new PasswordHasher(config, slowEncoder, meterRegistry);
+
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> hasher.encode("first"));
+        started.await(5, TimeUnit.SECONDS);
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> hasher.encode("second"));
+        while (meterRegistry.get("cointoss.passwords.queue.depth").gauge().value() < 1) {
+            Thread.sleep(5);
+        }
+
+        assertThatThrownBy(() -> hasher.encode("third")).isInstanceOf(PasswordHashingBusyException.class);
+        assertThat(meterRegistry.get("cointoss.passwords.shed").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).startsWith("$2a$04$");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).startsWith("$2a$04$");
+    }
+}
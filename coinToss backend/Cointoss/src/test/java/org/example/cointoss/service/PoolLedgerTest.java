@@ -0,0 +1,147 @@
+package org.example.cointoss.service;
+
+import org.example.cointoss.TestData;
+import org.example.cointoss.repositories.BettingPoolsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class PoolLedgerTest {
+
+    @Autowired
+    private BettingPoolsRepository bettingPoolsRepository;
+
+    @Autowired
+    private TestData testData;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void concurrentBetsAreAllCountedAndFlushedOnce() throws Exception {
+        // A ledger of its own, so the scheduled flush of the application's one stays out of the way.
+        PoolLedger ledger = new PoolLedger(bettingPoolsRepository);
+        Long poolId = testData.createOpenPool();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        ledger.record(poolId, i % 2 == 0 ? "UP" : "DOWN", 100);
+                        if (i % 100 == 0) {
+                            ledger.flush();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        ledger.flush();
+        ledger.flush();
+
+        assertThat(ledger.totals(poolId).upMinor()).isEqualTo(400_000);
+        assertThat(ledger.totals(poolId).downMinor()).isEqualTo(400_000);
+        assertThat(rowTotals(poolId)).containsExactly(new BigDecimal("4000.00"), new BigDecimal("4000.00"));
+    }
+
+    @Test
+    void closeRebuildsTheTotalsFromTheBetsAndStopsFlushing() {
+        PoolLedger ledger = new PoolLedger(bettingPoolsRepository);
+        Long poolId = testData.createOpenPool();
+        insertBet(poolId, "UP", "10.00");
+        insertBet(poolId, "DOWN", "4.00");
+        ledger.record(poolId, "UP", 1000);
+        ledger.record(poolId, "DOWN", 400);
+        ledger.flush();
+
+        bettingPoolsRepository.transitionStatus(poolId, "OPEN", "LOCKED");
+        ledger.close(poolId);
+        // A bet that was still in flight when the pool locked.
+        ledger.record(poolId, "UP", 500);
+        ledger.flush();
+
+        assertThat(rowTotals(poolId)).containsExactly(new BigDecimal("10.00"), new BigDecimal("4.00"));
+    }
+
+    @Test
+    void aLateFlushOfAPoolAnotherNodeLockedIsANoOp() {
+        PoolLedger ledger = new PoolLedger(bettingPoolsRepository);
+        Long poolId = testData.createOpenPool();
+        insertBet(poolId, "UP", "10.00");
+        insertBet(poolId, "DOWN", "4.00");
+        ledger.record(poolId, "UP", 1000);
+
+        // Another node won the race to lock the pool and reconciled it; this one never calls close.
+        bettingPoolsRepository.transitionStatus(poolId, "OPEN", "LOCKED");
+        bettingPoolsRepository.reconcileTotals(poolId);
+        ledger.flush();
+        ledger.record(poolId, "DOWN", 400);
+        ledger.flush();
+
+        assertThat(rowTotals(poolId)).containsExactly(new BigDecimal("10.00"), new BigDecimal("4.00"));
+    }
+
+    @Test
+    void resyncRebuildsTheOtherNodesShareFromTheRow() {
+        PoolLedger ledger = new PoolLedger(bettingPoolsRepository);
+        Long poolId = testData.createOpenPool();
+        ledger.record(poolId, "UP", 1000);
+        ledger.flush();
+        // Another node flushed 3.00 UP and 2.00 DOWN, but only 1.00 UP of it was relayed here.
+        bettingPoolsRepository.addToTotals(poolId, new BigDecimal("3.00"), new BigDecimal("2.00"));
+        ledger.recordRemote(poolId, 100, 0);
+
+        ledger.resyncRemote();
+
+        assertThat(ledger.totals(poolId).upMinor()).isEqualTo(1300);
+        assertThat(ledger.totals(poolId).downMinor()).isEqualTo(200);
+    }
+
+    @Test
+    void betsArrivingAfterAPoolIsSettledDoNotBringItBack() {
+        PoolLedger ledger = new PoolLedger(bettingPoolsRepository);
+        Long poolId = testData.createOpenPool();
+        ledger.record(poolId, "UP", 1000);
+        bettingPoolsRepository.transitionStatus(poolId, "OPEN", "LOCKED");
+        ledger.close(poolId);
+        bettingPoolsRepository.updateStatus(poolId, "SETTLED");
+        ledger.evict(poolId);
+
+        // Relayed from another node after this one had already dropped the pool.
+        ledger.recordRemote(poolId, 500, 0);
+        ledger.record(poolId, "DOWN", 400);
+
+        assertThat(ledger.find(poolId)).isEmpty();
+        assertThat(ledger.totals(poolId).upMinor()).isZero();
+        assertThat(ledger.find(poolId)).isEmpty();
+    }
+
+    private void insertBet(Long poolId, String direction, String amount) {
+        Long userId = testData.createUserWithWallet();
+        jdbcTemplate.update("INSERT INTO bets (user_id, pool_id, amount, direction, status, created_at) VALUES (?, ?, ?, ?, 'PENDING', ?)",
+                userId, poolId, new BigDecimal(amount), direction, OffsetDateTime.now());
+    }
+
+    private List<BigDecimal> rowTotals(Long poolId) {
+        return jdbcTemplate.queryForObject("SELECT total_up_pool, total_down_pool FROM betting_pools WHERE id = ?",
+                (rs, row) -> List.of(rs.getBigDecimal(1), rs.getBigDecimal(2)), poolId);
+    }
+}
@@ -0,0 +1,116 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cointoss.config.BroadcastConfig;
+import org.example.cointoss.dtos.PoolUpdateDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PoolUpdateBroadcasterTest {
+
+    private final List<Message<?>> sent = new ArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PoolLedger.PoolTotals totals = new PoolLedger.PoolTotals(0, 0);
+    private final OpenPoolCache openPoolCache = new OpenPoolCache(null) {
+        @Override
+        public boolean isOpen(Long poolId) {
+            return poolId == 7L;
+        }
+    };
+    private PoolLedger poolLedger;
+    private PoolUpdateBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        poolLedger = new PoolLedger(null) {
+            @Override
+            public PoolTotals totals(Long poolId) {
+                return totals;
+            }
+        };
+        broadcaster = new PoolUpdateBroadcaster(new BroadcastConfig(),
+                new SimpMessagingTemplate((message, timeout) -> sent.add(message)), poolLedger, openPoolCache, meterRegistry);
+    }
+
+    @Test
+    void sendsOneUpdateWithTheLatestTotalsPerInterval() {
+        for (int i = 0; i < 1000; i++) {
+            broadcaster.broadcastPoolUpdate(7L);
+        }
+
+        broadcaster.flush();
+        broadcaster.flush();
+
+        assertThat(sent).hasSize(1);
+        assertThat(((PoolUpdateDto) sent.get(0).getPayload()).sequence()).isEqualTo(1);
+        assertThat(meterRegistry.get("cointoss.broadcast.pool.coalesced").counter().count()).isEqualTo(999);
+    }
+
+    @Test
+    void sendsStraightAwayOnLockWithTheNextSequenceNumber() {
+        broadcaster.broadcastPoolUpdate(7L);
+        broadcaster.flush();
+
+        broadcaster.broadcastPoolUpdate(7L);
+        broadcaster.flush(7L);
+        // The change was already sent by the lock.
+        broadcaster.flush();
+
+        assertThat(sent).extracting(message -> ((PoolUpdateDto) message.getPayload()).sequence()).containsExactly(1L, 2L);
+        assertThat(meterRegistry.get("cointoss.broadcast.pool.sent").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void snapshotsTheLastUpdateSoTheNextOneFollowsOnFromIt() {
+        poolLedger.record(7L, "UP", 500);
+        broadcaster.broadcastPoolUpdate(7L);
+        broadcaster.flush();
+
+        PoolUpdateDto snapshot = broadcaster.snapshot(7L).orElseThrow();
+        assertThat(snapshot.sequence()).isEqualTo(1);
+        assertThat(snapshot.totalUpPool()).isEqualByComparingTo("5.00");
+
+        poolLedger.record(7L, "DOWN", 300);
+        broadcaster.broadcastPoolUpdate(7L);
+        broadcaster.flush();
+
+        PoolUpdateDto next = (PoolUpdateDto) sent.get(1).getPayload();
+        assertThat(next.sequence()).isEqualTo(snapshot.sequence() + 1);
+        assertThat(next.addedUp()).isEqualByComparingTo("0");
+        assertThat(next.addedDown()).isEqualByComparingTo("3.00");
+        assertThat(snapshot.totalDownPool().add(next.addedDown())).isEqualByComparingTo(next.totalDownPool());
+    }
+
+    @Test
+    void sendsAChangeNotYetBroadcastBeforeSnapshottingIt() {
+        poolLedger.record(7L, "UP", 250);
+
+        PoolUpdateDto snapshot = broadcaster.snapshot(7L).orElseThrow();
+
+        assertThat(sent).hasSize(1);
+        assertThat(snapshot.sequence()).isEqualTo(((PoolUpdateDto) sent.get(0).getPayload()).sequence());
+        assertThat(snapshot.totalUpPool()).isEqualByComparingTo("2.50");
+    }
+
+    @Test
+    void hasNoSnapshotForAPoolThatIsNoLongerTakingBets() {
+        assertThat(broadcaster.snapshot(8L)).isEmpty();
+        assertThat(sent).isEmpty();
+    }
+
+    @Test
+    void ignoresALateChangeToAPoolThatIsNoLongerTakingBets() {
+        broadcaster.broadcastPoolUpdate(8L);
+        broadcaster.flush();
+
+        assertThat(sent).isEmpty();
+        assertThat(broadcaster.snapshot(8L)).isEmpty();
+    }
+}
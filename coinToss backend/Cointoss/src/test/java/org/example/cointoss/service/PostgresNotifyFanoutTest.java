@@ -0,0 +1,91 @@
+package org.example.cointoss.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PostgresNotifyFanoutTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void mergesTheUpdatesOfOtherNodesAndSkipsItsOwn() throws Exception {
+        Map<String, JsonNode> sent = new LinkedHashMap<>();
+        sent.put("/topic/price/BTC-USDT", objectMapper.readTree("{\"price\":65000}"));
+        Map<Long, long[]> bets = new LinkedHashMap<>();
+        bets.put(7L, new long[] {500, 0});
+        List<String> first = PostgresNotifyFanout.encode(objectMapper, "node-a", sent, bets, Set.of(6L),
+                PostgresNotifyFanout.MAX_PAYLOAD_BYTES);
+
+        Map<String, JsonNode> later = Map.of("/topic/price/BTC-USDT", objectMapper.readTree("{\"price\":65100}"));
+        List<String> second = PostgresNotifyFanout.encode(objectMapper, "node-a", later, Map.of(7L, new long[] {0, 300}),
+                Set.of(), PostgresNotifyFanout.MAX_PAYLOAD_BYTES);
+
+        Map<String, JsonNode> messages = new LinkedHashMap<>();
+        Map<Long, long[]> received = new LinkedHashMap<>();
+        Set<Long> settled = new LinkedHashSet<>();
+        assertThat(first).hasSize(1);
+        assertThat(PostgresNotifyFanout.decode(objectMapper, "node-b", first.get(0), messages, received, settled)).isTrue();
+        assertThat(PostgresNotifyFanout.decode(objectMapper, "node-b", second.get(0), messages, received, settled)).isTrue();
+
+        // The latest price wins and the bets of both batches add up.
+        assertThat(messages.get("/topic/price/BTC-USDT").path("price").asLong()).isEqualTo(65100);
+        assertThat(received.get(7L)).containsExactly(500, 300);
+        assertThat(settled).containsExactly(6L);
+
+        Map<String, JsonNode> own = new LinkedHashMap<>();
+        assertThat(PostgresNotifyFanout.decode(objectMapper, "node-a", first.get(0), own, new LinkedHashMap<>(),
+                new LinkedHashSet<>())).isFalse();
+        assertThat(own).isEmpty();
+    }
+
+    @Test
+    void splitsBatchesToFitTheNotifyPayloadLimit() throws Exception {
+        Map<String, JsonNode> messages = new LinkedHashMap<>();
+        for (int i = 0; i < 300; i++) {
+            messages.put("/topic/pool/" + i, objectMapper.readTree("{\"poolId\":" + i + ",\"totalUpPool\":1234.56,\"totalDownPool\":789.00}"));
+        }
+        Map<Long, long[]> bets = new LinkedHashMap<>();
+        for (long i = 0; i < 300; i++) {
+            bets.put(i, new long[] {i, i});
+        }
+
+        List<String> payloads = PostgresNotifyFanout.encode(objectMapper, "node-a", messages, bets, Set.of(),
+                PostgresNotifyFanout.MAX_PAYLOAD_BYTES);
+
+        assertThat(payloads.size()).isGreaterThan(1);
+        Map<String, JsonNode> decodedMessages = new LinkedHashMap<>();
+        Map<Long, long[]> decodedBets = new LinkedHashMap<>();
+        for (String payload : payloads) {
+            assertThat(payload.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(PostgresNotifyFanout.MAX_PAYLOAD_BYTES);
+            PostgresNotifyFanout.decode(objectMapper, "node-b", payload, decodedMessages, decodedBets, new LinkedHashSet<>());
+        }
+        assertThat(decodedMessages).hasSize(300);
+        assertThat(decodedBets).hasSize(300);
+        assertThat(decodedBets.get(299L)).containsExactly(299, 299);
+    }
+
+    @Test
+    void fillsAPayloadUpToExactlyTheLimit() throws Exception {
+        Map<String, JsonNode> messages = Map.of("/topic/price/BTC-USDT", objectMapper.readTree("{\"price\":65000}"));
+        Map<Long, long[]> bets = Map.of(7L, new long[] {500, 0});
+        String whole = PostgresNotifyFanout.encode(objectMapper, "node-a", messages, bets, Set.of(6L),
+                PostgresNotifyFanout.MAX_PAYLOAD_BYTES).get(0);
+        int size = whole.getBytes(StandardCharsets.UTF_8).length;
+
+        assertThat(PostgresNotifyFanout.encode(objectMapper, "node-a", messages, bets, Set.of(6L), size))
+                .containsExactly(whole);
+        assertThat(PostgresNotifyFanout.encode(objectMapper, "node-a", messages, bets, Set.of(6L), size - 1))
+                .hasSize(2);
+        assertThat(objectMapper.readTree(whole).path("s").get(0).asLong()).isEqualTo(6L);
+    }
+}
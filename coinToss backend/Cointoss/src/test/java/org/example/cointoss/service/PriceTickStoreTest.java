@@ -0,0 +1,65 @@
+package org.example.cointoss.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "cointoss.prices.max-staleness-ms=5000")
+class PriceTickStoreTest {
+
+    @Autowired
+    private PriceTickStore priceTickStore;
+
+    @Test
+    void picksTheTickClosestToTheRequestedTime() {
+        String pair = uniquePair();
+        OffsetDateTime time = OffsetDateTime.now().minusMinutes(1);
+        priceTickStore.record(pair, new BigDecimal("100"), time.minusSeconds(3));
+        priceTickStore.record(pair, new BigDecimal("101"), time.plusSeconds(2));
+        priceTickStore.record(pair, new BigDecimal("102"), time.plusSeconds(4));
+
+        assertThat(priceTickStore.closestTo(pair, time)).get()
+                .extracting(PriceTickStore.Tick::price).isEqualTo(new BigDecimal("101.00000000"));
+        // Equally far on both sides: the earlier tick wins.
+        assertThat(priceTickStore.closestTo(pair, time.minusSeconds(1))).get()
+                .extracting(tick -> tick.price().intValue()).isEqualTo(100);
+    }
+
+    @Test
+    void ignoresTicksBeyondTheStalenessBound() {
+        String pair = uniquePair();
+        OffsetDateTime time = OffsetDateTime.now().minusMinutes(1);
+        priceTickStore.record(pair, new BigDecimal("100"), time.minusSeconds(6));
+        priceTickStore.record(pair, new BigDecimal("101"), time.plusSeconds(6));
+
+        assertThat(priceTickStore.closestTo(pair, time)).isEmpty();
+        assertThat(priceTickStore.closestTo(pair, time.plusSeconds(2))).isPresent();
+        assertThat(priceTickStore.closestTo(uniquePair(), time)).isEmpty();
+    }
+
+    @Test
+    void scansARangeOfTicksOldestFirst() {
+        String pair = uniquePair();
+        OffsetDateTime start = OffsetDateTime.now().minusMinutes(5);
+        for (int i = 0; i < 10; i++) {
+            priceTickStore.record(pair, new BigDecimal(99 + i), new BigDecimal(101 + i), new BigDecimal(100 + i), start.plusSeconds(i));
+        }
+
+        List<PriceTickStore.Tick> ticks = priceTickStore.range(pair, start.plusSeconds(3), start.plusSeconds(6));
+
+        assertThat(ticks).extracting(tick -> tick.price().intValue()).containsExactly(103, 104, 105);
+        assertThat(ticks.get(0).bid()).isEqualByComparingTo("102");
+        assertThat(ticks.get(0).ask()).isEqualByComparingTo("104");
+    }
+
+    private static String uniquePair() {
+        return UUID.randomUUID().toString().substring(0, 8) + "/USDT";
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.cointoss.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cointoss.config.PoolConfig;
+import org.example.cointoss.config.PriceConfig;
+import org.example.cointoss.exceptions.PriceUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QuidaxPriceFeedTest {
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicReference<String> lastPrice = new AtomicReference<>("65000.5");
+    private final AtomicInteger status = new AtomicInteger(200);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private QuidaxPriceFeed feed;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/markets/tickers", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = ("{\"status\":\"success\",\"data\":{"
+                    + "\"btcusdt\":{\"at\":1,\"ticker\":{\"buy\":\"1\",\"sell\":\"2\",\"last\":\"" + lastPrice.get() + "\"}},"
+                    + "\"ethusdt\":{\"at\":1,\"ticker\":{\"buy\":\"3\",\"sell\":\"4\",\"last\":\"3500\"}},"
+                    + "\"xrpusdt\":{\"at\":1,\"ticker\":{\"buy\":\"0.5\",\"sell\":\"0.6\",\"last\":\"0.55\"}}}}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status.get(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        PriceConfig config = new PriceConfig();
+        config.setFeedMaxAgeMs(60_000);
+        config.setAssetPairs(List.of("ETH/USDT"));
+        // The default market, BTC/USDT, is captured too.
+        feed = new QuidaxPriceFeed(config, new PoolConfig(), "http://127.0.0.1:" + server.getAddress().getPort(), meterRegistry);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void servesPricesFromTheCacheBetweenPolls() {
+        feed.poll();
+        assertThat(feed.latest("BTCUSDT").getData().getTicker().getLastPrice()).isEqualByComparingTo("65000.5");
+        for (int i = 0; i < 100; i++) {
+            feed.latest("btcusdt");
+        }
+        assertThat(requests.get()).isEqualTo(1);
+
+        lastPrice.set("65100");
+        feed.poll();
+
+        assertThat(requests.get()).isEqualTo(2);
+        assertThat(feed.latest("btcusdt").getData().getTicker().getLastPrice()).isEqualByComparingTo("65100");
+        assertThat(meterRegistry.get("cointoss.prices.feed.age").tag("market", "btcusdt").gauge().value()).isLessThan(60);
+    }
+
+    @Test
+    void refreshesEveryMarketWithOneRequestPerPoll() {
+        feed.poll();
+
+        assertThat(requests.get()).isEqualTo(1);
+        assertThat(feed.latest("btcusdt").getData().getTicker().getLastPrice()).isEqualByComparingTo("65000.5");
+        assertThat(feed.latest("ethusdt").getData().getTicker().getLastPrice()).isEqualByComparingTo("3500");
+        assertThatThrownBy(() -> feed.latest("solusdt")).isInstanceOf(PriceUnavailableException.class);
+    }
+
+    @Test
+    void keepsTheLastGoodPriceAndCountsFailedPolls() {
+        feed.poll();
+        status.set(500);
+
+        feed.poll();
+
+        assertThat(feed.latest("btcusdt").getData().getTicker().getLastPrice()).isEqualByComparingTo("65000.5");
+        assertThat(meterRegistry.get("cointoss.prices.feed.errors").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failsInsteadOfReturningNullWhenThereIsNoPrice() {
+        status.set(503);
+        feed.poll();
+
+        assertThatThrownBy(() -> feed.latest("ethusdt")).isInstanceOf(PriceUnavailableException.class);
+    }
+
+    @Test
+    void neverCallsTheExchangeFromARead() {
+        assertThatThrownBy(() -> feed.latest("btcusdt")).isInstanceOf(PriceUnavailableException.class);
+        // Not a captured pair, so it is only polled from its first request on.
+        assertThatThrownBy(() -> feed.latest("xrpusdt")).isInstanceOf(PriceUnavailableException.class);
+        assertThat(requests.get()).isZero();
+
+        feed.poll();
+
+        assertThat(feed.latest("xrpusdt").getData().getTicker().getLastPrice()).isEqualByComparingTo("0.55");
+    }
+}
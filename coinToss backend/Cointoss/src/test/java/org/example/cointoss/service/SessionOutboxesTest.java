@@ -0,0 +1,331 @@
+package org.example.cointoss.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cointoss.config.BroadcastConfig;
+import org.example.cointoss.dtos.PoolUpdateDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionOutboxesTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BroadcastConfig config = new BroadcastConfig();
+    private final ClientSession session = new ClientSession("slow", true);
+    private final SessionOutboxes outboxes = new SessionOutboxes(config, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        session.release.countDown();
+        outboxes.stop();
+    }
+
+    @Test
+    void replacesAQueuedPoolUpdateWithTheNewerOne() throws Exception {
+        WebSocketSession outbox = outboxes.open(session);
+
+        // The first message holds the writer until the client is released.
+        outbox.sendMessage(frame("/topic/price/BTC-USDT", "p1"));
+        session.writing.await(5, TimeUnit.SECONDS);
+        outbox.sendMessage(frame("/topic/pool/7", "a"));
+        outbox.sendMessage(frame("/app/pool/7", "snapshot"));
+        outbox.sendMessage(frame("/topic/pool/7", "b"));
+        outbox.sendMessage(frame("/topic/pool/7", "c"));
+        assertThat(meterRegistry.get("cointoss.websocket.outbound.queued").tag("topic", "pool").gauge().value()).isEqualTo(2);
+
+        session.release.countDown();
+
+        awaitReceived(3);
+        assertThat(session.received).extracting(SessionOutboxesTest::body).containsExactly("p1", "c", "snapshot");
+        assertThat(meterRegistry.get("cointoss.websocket.outbound.dropped").tags("topic", "pool", "reason", "superseded")
+                .counter().count()).isEqualTo(2);
+        assertThat(session.closeStatus).isNull();
+    }
+
+    @Test
+    void aClientSummingDeltasSeesTheGapLeftByASupersededUpdateAndResubscribes() throws Exception {
+        WebSocketSession outbox = outboxes.open(session);
+        PoolClient client = new PoolClient();
+
+        outbox.sendMessage(frame("/topic/pool/7", update("10.00", "10.00", 1)));
+        session.writing.await(5, TimeUnit.SECONDS);
+        outbox.sendMessage(frame("/topic/pool/7", update("15.00", "5.00", 2)));
+        outbox.sendMessage(frame("/topic/pool/7", update("17.00", "2.00", 3)));
+        session.release.countDown();
+        awaitReceived(2);
+
+        // Update 2 never arrived, so its 5.00 is missing from the client's sum.
+        session.received.forEach(client::accept);
+        assertThat(client.needsSnapshot).isTrue();
+        assertThat(client.totalUp).isEqualByComparingTo("12.00");
+
+        // The server answers the resubscription with the pool's snapshot, then carries on.
+        outbox.sendMessage(frame("/app/pool/7", update("17.00", "0", 3)));
+        outbox.sendMessage(frame("/topic/pool/7", update("20.00", "3.00", 4)));
+        awaitReceived(4);
+
+        session.received.subList(2, 4).forEach(client::accept);
+        assertThat(client.needsSnapshot).isFalse();
+        assertThat(client.totalUp).isEqualByComparingTo("20.00");
+        assertThat(client.sequence).isEqualTo(4);
+    }
+
+    @Test
+    void disconnectsASessionThatQueuesMoreThanItsBuffer() throws Exception {
+        config.setSessionBufferBytes(1024);
+        WebSocketSession outbox = outboxes.open(session);
+
+        outbox.sendMessage(frame("/topic/price/BTC-USDT", "first"));
+        session.writing.await(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 100; i++) {
+            outbox.sendMessage(frame("/topic/price/BTC-USDT", "tick " + i));
+        }
+
+        assertThat(session.closeStatus).isEqualTo(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(outbox.isOpen()).isFalse();
+        assertThat(meterRegistry.get("cointoss.websocket.outbound.evicted").tags("topic", "price", "reason", "buffer")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cointoss.websocket.outbound.queued").tag("topic", "price").gauge().value()).isZero();
+    }
+
+    @Test
+    void disconnectsASessionStuckOnAWriteForLongerThanTheTimeLimit() throws Exception {
+        config.setSessionSendTimeLimitMs(50);
+        WebSocketSession outbox = outboxes.open(session);
+
+        outbox.sendMessage(frame("/topic/pool/7", "a"));
+        session.writing.await(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        outbox.sendMessage(frame("/topic/pool/7", "b"));
+
+        assertThat(session.closeStatus).isEqualTo(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(meterRegistry.get("cointoss.websocket.outbound.evicted").tags("topic", "pool", "reason", "time")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void disconnectsAWriteStuckPastTheTimeLimitWithoutWaitingForTheNextFrame() throws Exception {
+        config.setSessionSendTimeLimitMs(50);
+        WebSocketSession outbox = outboxes.open(session);
+
+        outbox.sendMessage(frame("/topic/pool/7", "a"));
+        session.writing.await(5, TimeUnit.SECONDS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (session.closeStatus == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(session.closeStatus).isEqualTo(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(meterRegistry.get("cointoss.websocket.outbound.evicted").tags("topic", "pool", "reason", "time")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void aSessionStuckOnAWriteDoesNotHoldUpTheOthers() throws Exception {
+        config.setOutboundThreads(1);
+        config.setOutboundCheckIntervalMs(20);
+        SessionOutboxes singleWriter = new SessionOutboxes(config, meterRegistry);
+        ClientSession healthy = new ClientSession("healthy", false);
+        try {
+            // Takes the only writer, for the whole ten second time limit.
+            singleWriter.open(session).sendMessage(frame("/topic/pool/7", "a"));
+            session.writing.await(5, TimeUnit.SECONDS);
+
+            long startNanos = System.nanoTime();
+            singleWriter.open(healthy).sendMessage(frame("/topic/pool/7", "b"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (healthy.received.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+
+            assertThat(healthy.received).extracting(SessionOutboxesTest::body).containsExactly("b");
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)).isLessThan(1000);
+            assertThat(session.closeStatus).isNull();
+        } finally {
+            singleWriter.stop();
+        }
+    }
+
+    @Test
+    void readsTheDestinationOfAStompFrame() {
+        assertThat(SessionOutboxes.destination(frame("/topic/pool/7", "{}"))).isEqualTo("/topic/pool/7");
+        assertThat(SessionOutboxes.destination(new TextMessage("\n"))).isNull();
+        assertThat(SessionOutboxes.topic("/topic/pool/7")).isEqualTo("pool");
+        assertThat(SessionOutboxes.topic(null)).isEqualTo("session");
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (session.received.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static TextMessage frame(String destination, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\n\n" + body + "\0");
+    }
+
+    private static String body(WebSocketMessage<?> message) {
+        String frame = ((TextMessage) message).getPayload();
+        return frame.substring(frame.indexOf("\n\n") + 2, frame.length() - 1);
+    }
+
+    private static String update(String totalUp, String addedUp, long sequence) throws Exception {
+        return JSON.writeValueAsString(new PoolUpdateDto(7L, new BigDecimal(totalUp), BigDecimal.ZERO,
+                new BigDecimal(addedUp), BigDecimal.ZERO, sequence));
+    }
+
+    // Keeps its own total from the deltas, as PoolUpdateDto asks of such a client.
+    private static class PoolClient {
+        private BigDecimal totalUp = BigDecimal.ZERO;
+        private long sequence;
+        private boolean needsSnapshot;
+
+        void accept(WebSocketMessage<?> message) {
+            PoolUpdateDto update;
+            try {
+                update = JSON.readValue(body(message), PoolUpdateDto.class);
+            } catch (JsonProcessingException ex) {
+                throw new IllegalStateException(ex);
+            }
+            if (SessionOutboxes.destination(message).startsWith("/app/pool/")) {
+                totalUp = update.totalUpPool();
+                sequence = update.sequence();
+                needsSnapshot = false;
+                return;
+            }
+            if (update.sequence() != sequence + 1) {
+                needsSnapshot = true;
+            }
+            totalUp = totalUp.add(update.addedUp());
+            sequence = update.sequence();
+        }
+    }
+
+    // A slow one blocks on its writes until released, like a client that stopped reading.
+    private static class ClientSession implements WebSocketSession {
+        private final String id;
+        private final boolean slow;
+        private final List<WebSocketMessage<?>> received = new CopyOnWriteArrayList<>();
+        private final CountDownLatch writing = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile CloseStatus closeStatus;
+
+        ClientSession(String id, boolean slow) {
+            this.id = id;
+            this.slow = slow;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            writing.countDown();
+            if (slow) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            received.add(message);
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+            closeStatus = status;
+        }
+
+        @Override
+        public void close() {
+            close(CloseStatus.NORMAL);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return closeStatus == null;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return Map.of();
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return "v12.stomp";
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 64 * 1024;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 64 * 1024;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.example.cointoss.service;
+
+import org.example.cointoss.TestData;
+import org.example.cointoss.config.SettlementConfig;
+import org.example.cointoss.utilities.MoneyUtil;
+import org.example.cointoss.utilities.PayoutCalculator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "cointoss.settlement.chunk-size=64")
+class SettlementEngineTest {
+
+    @Autowired
+    private SettlementEngine settlementEngine;
+
+    @Autowired
+    private TestData testData;
+
+    @Autowired
+    private SettlementConfig settlementConfig;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void paysOutExactlyTheWinningsPoolAndCreditsEachWinner() {
+        List<Long> userIds = testData.createUsersWithWallets(20);
+        Long poolId = testData.createPool("BTC/USDT", "LOCKED", OffsetDateTime.now());
+        List<Object[]> bets = randomBets(poolId, userIds, 300, new Random(42));
+        insertBets(bets);
+        Map<Long, BigDecimal> balancesBefore = balances(userIds);
+
+        settle(poolId, "UP");
+
+        BigDecimal up = BigDecimal.ZERO;
+        BigDecimal down = BigDecimal.ZERO;
+        for (Object[] bet : bets) {
+            if ("UP".equals(bet[3])) {
+                up = up.add((BigDecimal) bet[2]);
+            } else {
+                down = down.add((BigDecimal) bet[2]);
+            }
+        }
+        BigDecimal winningsPool = up.add(down).multiply(new BigDecimal("0.95")).setScale(2, RoundingMode.DOWN);
+
+        List<BigDecimal> payouts = jdbcTemplate.queryForList(
+                "SELECT payout FROM bets WHERE pool_id = ? ORDER BY id", BigDecimal.class, poolId);
+        Map<Long, BigDecimal> expectedBalances = new HashMap<>(balancesBefore);
+        BigDecimal paidOut = BigDecimal.ZERO;
+        for (int i = 0; i < bets.size(); i++) {
+            Object[] bet = bets.get(i);
+            BigDecimal payout = payouts.get(i);
+            if ("UP".equals(bet[3])) {
+                // Never more than a kobo away from the exact proportional share.
+                BigDecimal exactShare = winningsPool.multiply((BigDecimal) bet[2]).divide(up, 10, RoundingMode.HALF_UP);
+                assertThat(payout.subtract(exactShare).abs()).isLessThan(new BigDecimal("0.01"));
+                expectedBalances.merge((Long) bet[0], payout, BigDecimal::add);
+            } else {
+                assertThat(payout).isEqualByComparingTo(BigDecimal.ZERO);
+            }
+            paidOut = paidOut.add(payout);
+        }
+
+        assertThat(paidOut).isEqualByComparingTo(winningsPool);
+        // Chunk by chunk, the payouts come out exactly as the in-memory calculator gives them.
+        assertThat(winnerPayouts(poolId)).containsExactly(PayoutCalculator.allocate(
+                MoneyUtil.toMinor(winningsPool), winnerStakes(bets, "UP")));
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM bets WHERE pool_id = ? AND status = 'PENDING'", Long.class, poolId)).isZero();
+        Map<Long, BigDecimal> balancesAfter = balances(userIds);
+        for (Long userId : userIds) {
+            assertThat(balancesAfter.get(userId)).isEqualByComparingTo(expectedBalances.get(userId));
+        }
+    }
+
+    @Test
+    void resumesFromTheCheckpointWithoutCreditingAnyWalletTwice() {
+        List<Long> userIds = testData.createUsersWithWallets(10);
+        Long poolId = testData.createPool("BTC/USDT", "LOCKED", OffsetDateTime.now());
+        List<Object[]> bets = randomBets(poolId, userIds, 500, new Random(9));
+        insertBets(bets);
+        Map<Long, BigDecimal> balancesBefore = balances(userIds);
+
+        // The first instance gets two chunks in before it dies.
+        SettlementEngine.Plan plan = settlementEngine.plan(poolId, new BigDecimal("64000.00"), "DOWN");
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.execute(status -> settlementEngine.settleNextChunk(plan));
+        transactionTemplate.execute(status -> settlementEngine.settleNextChunk(plan));
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT settled_bets FROM settlement_checkpoints WHERE pool_id = ?", Long.class, poolId)).isEqualTo(128);
+
+        // The next one picks up the same plan, even with a different price in hand, and finishes.
+        SettlementEngine.Plan resumed = settlementEngine.findPlan(poolId).orElseThrow();
+        assertThat(resumed).isEqualTo(plan);
+        assertThat(settlementEngine.plan(poolId, new BigDecimal("66000.00"), "UP")).isEqualTo(plan);
+        settlementEngine.settle(resumed);
+        // Settling again once it is done changes nothing.
+        settlementEngine.settle(resumed);
+
+        long[] expectedPayouts = PayoutCalculator.allocate(plan.pot(), winnerStakes(bets, "DOWN"));
+        assertThat(winnerPayouts(poolId)).containsExactly(expectedPayouts);
+        Map<Long, BigDecimal> expectedBalances = new HashMap<>(balancesBefore);
+        int winner = 0;
+        for (Object[] bet : bets) {
+            if ("DOWN".equals(bet[3])) {
+                expectedBalances.merge((Long) bet[0], MoneyUtil.fromMinor(expectedPayouts[winner++]), BigDecimal::add);
+            }
+        }
+        Map<Long, BigDecimal> balancesAfter = balances(userIds);
+        for (Long userId : userIds) {
+            assertThat(balancesAfter.get(userId)).isEqualByComparingTo(expectedBalances.get(userId));
+        }
+        assertThat(settlementEngine.findPlan(poolId)).isEmpty();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT status FROM betting_pools WHERE id = ?", String.class, poolId)).isEqualTo("SETTLED");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM bets WHERE pool_id = ? AND status = 'LOST'", Long.class, poolId))
+                .isEqualTo(bets.size() - expectedPayouts.length);
+    }
+
+    @Test
+    void settlesAHundredThousandBetPoolInProductionSizedChunks() {
+        List<Long> userIds = testData.createUsersWithWallets(1000);
+        Long poolId = testData.createPool("BTC/USDT", "LOCKED", OffsetDateTime.now());
+        insertBets(randomBets(poolId, userIds, 100_000, new Random(7)));
+
+        // Production-sized chunks rather than the small ones the other tests use.
+        int chunkSize = settlementConfig.getChunkSize();
+        settlementConfig.setChunkSize(1000);
+        SettlementEngine.Plan plan;
+        try {
+            plan = settle(poolId, "DOWN");
+        } finally {
+            settlementConfig.setChunkSize(chunkSize);
+        }
+
+        assertThat(plan.betCount()).isEqualTo(100_000);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT status FROM betting_pools WHERE id = ?", String.class, poolId)).isEqualTo("SETTLED");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM bets WHERE pool_id = ? AND status = 'PENDING'", Long.class, poolId)).isZero();
+    }
+
+    private SettlementEngine.Plan settle(Long poolId, String winningDirection) {
+        SettlementEngine.Plan plan = settlementEngine.plan(poolId, new BigDecimal("65000.00"), winningDirection);
+        settlementEngine.settle(plan);
+        return plan;
+    }
+
+    private long[] winnerStakes(List<Object[]> bets, String winningDirection) {
+        return bets.stream()
+                .filter(bet -> winningDirection.equals(bet[3]))
+                .mapToLong(bet -> MoneyUtil.toMinor((BigDecimal) bet[2]))
+                .toArray();
+    }
+
+    private long[] winnerPayouts(Long poolId) {
+        return jdbcTemplate.queryForList(
+                        "SELECT payout FROM bets WHERE pool_id = ? AND status = 'WON' ORDER BY id", BigDecimal.class, poolId)
+                .stream().mapToLong(MoneyUtil::toMinor).toArray();
+    }
+
+    private List<Object[]> randomBets(Long poolId, List<Long> userIds, int count, Random random) {
+        List<Object[]> bets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Long userId = userIds.get(random.nextInt(userIds.size()));
+            BigDecimal amount = BigDecimal.valueOf(100 + random.nextInt(500_000), 2);
+            bets.add(new Object[]{userId, poolId, amount, random.nextBoolean() ? "UP" : "DOWN"});
+        }
+        return bets;
+    }
+
+    private void insertBets(List<Object[]> bets) {
+        OffsetDateTime now = OffsetDateTime.now();
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO bets (user_id, pool_id, amount, direction, status, created_at) VALUES (?, ?, ?, ?, 'PENDING', ?)",
+                bets, 1000, (ps, bet) -> {
+                    ps.setLong(1, (Long) bet[0]);
+                    ps.setLong(2, (Long) bet[1]);
+                    ps.setBigDecimal(3, (BigDecimal) bet[2]);
+                    ps.setString(4, (String) bet[3]);
+                    ps.setObject(5, now);
+                });
+    }
+
+    private Map<Long, BigDecimal> balances(List<Long> userIds) {
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        for (Long userId : userIds) {
+            balances.put(userId, jdbcTemplate.queryForObject("SELECT balance FROM wallets WHERE user_id = ?", BigDecimal.class, userId));
+        }
+        return balances;
+    }
+}
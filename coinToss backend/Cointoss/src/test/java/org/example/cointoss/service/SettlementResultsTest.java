@@ -0,0 +1,129 @@
+package org.example.cointoss.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cointoss.TestData;
+import org.example.cointoss.dtos.BetResultsDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpSubscription;
+import org.springframework.messaging.simp.user.SimpSubscriptionMatcher;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+
+import java.math.BigDecimal;
+import java.security.Principal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class SettlementResultsTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestData testData;
+
+    private final List<Message<?>> sent = new ArrayList<>();
+
+    @Test
+    void pushesEachConnectedBettorOneMessageWithAllTheirBets() {
+        Long winner = testData.createUserWithWallet(new BigDecimal("120.00"));
+        Long loser = testData.createUserWithWallet(new BigDecimal("90.00"));
+        Long offline = testData.createUserWithWallet(new BigDecimal("100.00"));
+        Long poolId = createSettledPool();
+        insertBet(winner, poolId, "10.00", "UP", "WON", "15.00");
+        insertBet(winner, poolId, "5.00", "UP", "WON", "7.50");
+        insertBet(loser, poolId, "10.00", "DOWN", "LOST", "0");
+        insertBet(offline, poolId, "10.00", "UP", "WON", "15.00");
+
+        SettlementResults results = new SettlementResults(jdbcTemplate,
+                new SimpMessagingTemplate((message, timeout) -> sent.add(message)),
+                new ConnectedUsers(Set.of(String.valueOf(winner), String.valueOf(loser))),
+                new SimpleMeterRegistry());
+        results.push(poolId);
+
+        assertThat(sent).extracting(message -> SimpMessageHeaderAccessor.getDestination(message.getHeaders()))
+                .containsExactly("/user/" + winner + "/queue/results", "/user/" + loser + "/queue/results");
+        BetResultsDto won = (BetResultsDto) sent.get(0).getPayload();
+        assertThat(won.poolId()).isEqualTo(poolId);
+        assertThat(won.bets()).extracting(BetResultsDto.BetResult::status).containsExactly("WON", "WON");
+        assertThat(won.totalPayout()).isEqualByComparingTo("22.50");
+        assertThat(won.balance()).isEqualByComparingTo("120.00");
+        BetResultsDto lost = (BetResultsDto) sent.get(1).getPayload();
+        assertThat(lost.totalPayout()).isEqualByComparingTo("0");
+        assertThat(lost.balance()).isEqualByComparingTo("90.00");
+    }
+
+    private Long createSettledPool() {
+        OffsetDateTime settlementTime = OffsetDateTime.now().minusMinutes(1);
+        Long poolId = testData.createPool("BTC/USDT", "SETTLED", settlementTime);
+        jdbcTemplate.update("UPDATE betting_pools SET end_price = 66000.00, total_up_pool = 25.00, total_down_pool = 10.00 WHERE id = ?", poolId);
+        return poolId;
+    }
+
+    private void insertBet(Long userId, Long poolId, String amount, String direction, String status, String payout) {
+        jdbcTemplate.update("INSERT INTO bets (user_id, pool_id, amount, direction, status, payout, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                userId, poolId, new BigDecimal(amount), direction, status, new BigDecimal(payout), OffsetDateTime.now());
+    }
+
+    // Only the names matter: they are the users with a session on this node.
+    private record ConnectedUsers(Set<String> names) implements SimpUserRegistry {
+        @Override
+        public SimpUser getUser(String userName) {
+            return names.contains(userName) ? new ConnectedUser(userName) : null;
+        }
+
+        @Override
+        public Set<SimpUser> getUsers() {
+            return Set.of();
+        }
+
+        @Override
+        public int getUserCount() {
+            return names.size();
+        }
+
+        @Override
+        public Set<SimpSubscription> findSubscriptions(SimpSubscriptionMatcher matcher) {
+            return Set.of();
+        }
+    }
+
+    private record ConnectedUser(String name) implements SimpUser {
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public boolean hasSessions() {
+            return true;
+        }
+
+        @Override
+        public SimpSession getSession(String sessionId) {
+            return null;
+        }
+
+        @Override
+        public Set<SimpSession> getSessions() {
+            return Set.of();
+        }
+    }
+}
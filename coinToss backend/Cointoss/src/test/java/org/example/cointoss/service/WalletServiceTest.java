@@ -0,0 +1,155 @@
+package org.example.cointoss.service;
+
+import org.example.cointoss.dtos.*;
+import org.example.cointoss.entities.BankAccount;
+import org.example.cointoss.entities.Role;
+import org.example.cointoss.entities.TransactionStatus;
+import org.example.cointoss.entities.User;
+import org.example.cointoss.entities.Wallet;
+import org.example.cointoss.mappers.WalletMapper;
+import org.example.cointoss.repositories.TransactionRepository;
+import org.example.cointoss.repositories.UserRepository;
+import org.example.cointoss.repositories.WalletRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class WalletServiceTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletMapper walletMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void callsTheGatewayWithTheDebitAlreadyCommittedAndTheWalletUnlocked() {
+        User user = createUserWithBankAccount(new BigDecimal("100.00"));
+        WalletService walletService = walletService(request -> {
+            // Another writer gets through while the payout is in flight.
+            CompletableFuture.supplyAsync(() -> walletRepository.credit(user.getId(), new BigDecimal("5.00")))
+                    .orTimeout(5, TimeUnit.SECONDS)
+                    .join();
+            assertThat(transactionRepository.findByTransactionReference(request.getReference())).isPresent();
+            return InitiatePayoutResponse.builder().status(true).build();
+        });
+
+        assertThat(walletService.makeWithdrawal(walletIdOf(user), bankAccountIdOf(user), new BigDecimal("40.00"))).isNotNull();
+
+        assertThat(balanceOf(user)).isEqualByComparingTo("65.00");
+    }
+
+    @Test
+    void creditsBackAPayoutTheGatewayRejects() {
+        User user = createUserWithBankAccount(new BigDecimal("100.00"));
+        String[] reference = new String[1];
+        WalletService walletService = walletService(request -> {
+            reference[0] = request.getReference();
+            return InitiatePayoutResponse.builder().status(false).build();
+        });
+
+        assertThat(walletService.makeWithdrawal(walletIdOf(user), bankAccountIdOf(user), new BigDecimal("40.00"))).isNull();
+
+        assertThat(balanceOf(user)).isEqualByComparingTo("100.00");
+        assertThat(transactionRepository.findByTransactionReference(reference[0]).orElseThrow().getTransactionStatus())
+                .isEqualTo(TransactionStatus.FAILED);
+    }
+
+    @Test
+    void leavesAPayoutWithAnUnknownOutcomePending() {
+        User user = createUserWithBankAccount(new BigDecimal("100.00"));
+        String[] reference = new String[1];
+        WalletService walletService = walletService(request -> {
+            reference[0] = request.getReference();
+            return null;
+        });
+
+        walletService.makeWithdrawal(walletIdOf(user), bankAccountIdOf(user), new BigDecimal("40.00"));
+
+        assertThat(balanceOf(user)).isEqualByComparingTo("60.00");
+        assertThat(transactionRepository.findByTransactionReference(reference[0]).orElseThrow().getTransactionStatus())
+                .isEqualTo(TransactionStatus.PENDING);
+    }
+
+    private WalletService walletService(Function<WithdrawFundRequest, InitiatePayoutResponse> payouts) {
+        PaymentGateway gateway = new PaymentGateway() {
+            @Override
+            public VerifyBankAccountResponse verifyBankAccount(VerifyBankAccountRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CheckoutResponse createCheckout(FundWalletRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public InitiatePayoutResponse initiatePayout(WithdrawFundRequest withdrawFundRequest) {
+                return payouts.apply(withdrawFundRequest);
+            }
+
+            @Override
+            public VerifyPayoutResponse verifyPayout(String transactionRef) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void handleWebhook(KorapayWebhookEvent webhookEvent) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        return new WalletService(walletRepository, transactionRepository, gateway, walletMapper, transactionTemplate);
+    }
+
+    private User createUserWithBankAccount(BigDecimal balance) {
+        User user = new User();
+        user.setEmail(UUID.randomUUID() + "@example.com");
+        user.setFirstName("Wallet");
+        user.setLastName("Test");
+        user.setPassword("unused");
+        user.setRole(Role.USER);
+
+        Wallet wallet = new Wallet();
+        wallet.setBalance(balance);
+        wallet.setUser(user);
+        wallet.addBankAccount(BankAccount.builder()
+                .accountNumber("0123456789")
+                .bankCode("058")
+                .bankName("Test Bank")
+                .accountName("Wallet Test")
+                .build());
+        user.setWallet(wallet);
+        return userRepository.save(user);
+    }
+
+    private Long walletIdOf(User user) {
+        return user.getWallet().getId();
+    }
+
+    private Long bankAccountIdOf(User user) {
+        return user.getWallet().getBankAccounts().iterator().next().getId();
+    }
+
+    private BigDecimal balanceOf(User user) {
+        return walletRepository.findByUserId(user.getId()).orElseThrow().getBalance();
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.cointoss.utilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-bet BigDecimal payout code settlement used to run with {@link PayoutCalculator}.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.example.cointoss.utilities.PayoutCalculatorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayoutCalculatorBenchmark {
+
+    @Param({"100", "10000"})
+    private int winners;
+
+    private BigDecimal[] stakeAmounts;
+    private BigDecimal winningSideTotal;
+    private BigDecimal winningsPool;
+
+    private long[] stakes;
+    private long pot;
+    private long[] payouts;
+    private long[] remainders;
+    private int[] heap;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        stakeAmounts = new BigDecimal[winners];
+        stakes = new long[winners];
+        winningSideTotal = BigDecimal.ZERO;
+        for (int i = 0; i < winners; i++) {
+            stakes[i] = 100 + random.nextInt(500_000);
+            stakeAmounts[i] = MoneyUtil.fromMinor(stakes[i]);
+            winningSideTotal = winningSideTotal.add(stakeAmounts[i]);
+        }
+        // Winners are half of the pool.
+        BigDecimal totalPool = winningSideTotal.multiply(BigDecimal.valueOf(2));
+        winningsPool = totalPool.multiply(new BigDecimal("0.95"));
+        pot = PayoutCalculator.winningsPool(MoneyUtil.toMinor(totalPool), 95);
+        payouts = new long[winners];
+        remainders = new long[winners];
+        heap = new int[winners];
+    }
+
+    @Benchmark
+    public void bigDecimalPerBet(Blackhole blackhole) {
+        for (BigDecimal amount : stakeAmounts) {
+            BigDecimal proportion = amount.divide(winningSideTotal, 10, RoundingMode.HALF_UP);
+            blackhole.consume(winningsPool.multiply(proportion));
+        }
+    }
+
+    @Benchmark
+    public long[] largestRemainder() {
+        PayoutCalculator.allocate(pot, stakes, payouts, remainders, heap);
+        return payouts;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PayoutCalculatorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
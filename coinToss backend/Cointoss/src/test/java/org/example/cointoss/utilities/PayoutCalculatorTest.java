@@ -0,0 +1,76 @@
+package org.example.cointoss.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PayoutCalculatorTest {
+
+    @Test
+    void payoutsAddUpToExactlyThePot() {
+        Random random = new Random(3);
+        for (int round = 0; round < 200; round++) {
+            long[] stakes = new long[1 + random.nextInt(500)];
+            for (int i = 0; i < stakes.length; i++) {
+                stakes[i] = 100 + random.nextInt(1_000_000);
+            }
+            long pot = random.nextInt(Integer.MAX_VALUE);
+
+            long[] payouts = PayoutCalculator.allocate(pot, stakes);
+
+            assertThat(Arrays.stream(payouts).sum()).isEqualTo(pot);
+            long total = Arrays.stream(stakes).sum();
+            for (int i = 0; i < stakes.length; i++) {
+                long floor = Math.floorDiv(stakes[i] * pot, total);
+                assertThat(payouts[i]).isBetween(floor, floor + 1);
+            }
+        }
+    }
+
+    @Test
+    void leftoverKoboGoToTheLargestRemaindersThenTheEarliestStake() {
+        // 100 split 1:1:1 leaves a kobo over, which goes to the first stake.
+        assertThat(PayoutCalculator.allocate(100, new long[]{5, 5, 5})).containsExactly(34, 33, 33);
+        // 10 split 1:2:3 floors to 1, 3, 5; the remainders are 4, 2 and 0 sixths.
+        assertThat(PayoutCalculator.allocate(10, new long[]{1, 2, 3})).containsExactly(2, 3, 5);
+    }
+
+    @Test
+    void handlesStakeTimesPotBeyondALong() {
+        long[] stakes = {4_000_000_000_000L, 3_000_000_000_000L, 3_000_000_000_001L};
+        long pot = 9_500_000_000_001L;
+
+        long[] payouts = PayoutCalculator.allocate(pot, stakes);
+
+        assertThat(Arrays.stream(payouts).sum()).isEqualTo(pot);
+        BigInteger total = BigInteger.valueOf(Arrays.stream(stakes).sum());
+        for (int i = 0; i < stakes.length; i++) {
+            long floor = BigInteger.valueOf(stakes[i]).multiply(BigInteger.valueOf(pot)).divide(total).longValueExact();
+            assertThat(payouts[i]).isBetween(floor, floor + 1);
+        }
+    }
+
+    @Test
+    void paysNothingWhenThereAreNoStakes() {
+        assertThat(PayoutCalculator.allocate(500, new long[0])).isEmpty();
+        assertThat(PayoutCalculator.allocate(500, new long[]{0, 0})).containsExactly(0, 0);
+    }
+
+    @Test
+    void rejectsNegativeAmounts() {
+        assertThatThrownBy(() -> PayoutCalculator.allocate(-1, new long[]{1}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PayoutCalculator.allocate(1, new long[]{-1}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void winningsPoolKeepsFractionsOfAKoboForTheHouse() {
+        assertThat(PayoutCalculator.winningsPool(1_999, 95)).isEqualTo(1_899);
+    }
+}